@@ -0,0 +1,65 @@
+package ru.ifmo.rain.ivanova.crawler;
+
+/**
+ * AIMD concurrency limit of one host.
+ * <p>
+ * Each fast successful download raises the limit by {@code 1 / limit}, so the limit grows by about
+ * one per round of downloads. A moving average of recent latencies is compared to the baseline,
+ * which follows it down at once and up slowly, so single slow pages are not taken for congestion,
+ * while a latency growing with the limit is.
+ * An error or a recent latency above {@value #TOLERANCE} times the baseline halves the limit,
+ * at most once per round of downloads. The limit always stays within {@code [min, max]}.
+ * Not thread-safe, guarded by the owning {@code HostDownloader}.
+ */
+class AdaptiveLimit {
+    private static final double TOLERANCE = 2;
+    private static final double BACKOFF = 0.5;
+    private static final double RECENT_WEIGHT = 0.2;
+    private static final double BASELINE_WEIGHT = 0.0005;
+
+    private final int min;
+    private final int max;
+    private double limit;
+    private double recent = -1;
+    private double baseline = -1;
+    private int sinceDecrease = 0;
+
+    AdaptiveLimit(final int min, final int max) {
+        this.min = min;
+        this.max = max;
+        this.limit = min;
+    }
+
+    int get() {
+        return (int) limit;
+    }
+
+    void onSuccess(final long nanos) {
+        if (baseline < 0) {
+            recent = nanos;
+            baseline = nanos;
+        } else {
+            recent += (nanos - recent) * RECENT_WEIGHT;
+            baseline = Math.min(recent, baseline + (recent - baseline) * BASELINE_WEIGHT);
+        }
+        sinceDecrease++;
+        if (recent > TOLERANCE * baseline) {
+            decrease();
+        } else {
+            limit = Math.min(max, limit + 1 / limit);
+        }
+    }
+
+    void onError() {
+        sinceDecrease++;
+        decrease();
+    }
+
+    // Downloads started before a decrease finish after it, so they must not decrease the limit again.
+    private void decrease() {
+        if (sinceDecrease >= limit) {
+            limit = Math.max(min, limit * BACKOFF);
+            sinceDecrease = 0;
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package ru.ifmo.rain.ivanova.crawler;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Append-only log of a level-by-level crawl.
+ * <p>
+ * The log starts with a {@code crawl <depth> <url>} line. After each depth level it gets
+ * {@code downloaded <url>} and {@code error <url>\t<message>} lines for pages finished since the
+ * previous level, {@code frontier <url>} lines for links of the next level and a
+ * {@code level <number>} line, which commits them. Lines after the last {@code level} line
+ * are left from an interrupted write, they are ignored and cut off on resume.
+ * Backslash, tab, carriage return and line feed in URLs and messages are escaped with backslash.
+ * <p>
+ * Only the last frontier is used, so when superseded frontiers take half of the log, it is
+ * rewritten with the committed state and atomically replaces the old one.
+ */
+class CrawlCheckpoint implements AutoCloseable {
+    final String url;
+    final int depth;
+    int level = -1;
+    final List<String> downloaded = new ArrayList<>();
+    final Map<String, IOException> errors = new LinkedHashMap<>();
+    List<String> frontier = new ArrayList<>();
+    private final Set<String> writtenErrors = new HashSet<>();
+    private int writtenDownloaded = 0;
+    private long committed = 0;
+    private long frontierBytes = 0;
+    private long supersededBytes = 0;
+    private final Path file;
+    private BufferedWriter writer;
+
+    private CrawlCheckpoint(final Path file, final String url, final int depth, final BufferedWriter writer) {
+        this.file = file;
+        this.url = url;
+        this.depth = depth;
+        this.writer = writer;
+    }
+
+    /**
+     * Starts new log, replacing existing file.
+     */
+    static CrawlCheckpoint create(final Path file, final String url, final int depth) throws IOException {
+        final CrawlCheckpoint checkpoint = new CrawlCheckpoint(file, url, depth,
+                Files.newBufferedWriter(file, StandardCharsets.UTF_8));
+        checkpoint.committed = writeLine(checkpoint.writer, header(url, depth));
+        checkpoint.writer.flush();
+        return checkpoint;
+    }
+
+    /**
+     * Reads committed state of existing log and opens it for appending.
+     */
+    static CrawlCheckpoint open(final Path file) throws IOException {
+        final CrawlCheckpoint checkpoint;
+        try (final BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            final String[] header = Objects.requireNonNullElse(reader.readLine(), "").split(" ", 3);
+            if (header.length != 3 || !header[0].equals("crawl")) {
+                throw new IOException("Not a crawl checkpoint: " + file);
+            }
+            final int depth;
+            try {
+                depth = Integer.parseInt(header[1]);
+            } catch (final NumberFormatException e) {
+                throw new IOException("Incorrect depth in checkpoint: " + header[1], e);
+            }
+            checkpoint = new CrawlCheckpoint(file, unescape(header[2]), depth, null);
+            checkpoint.frontier.add(checkpoint.url);
+            checkpoint.committed = length(header[0] + " " + header[1] + " " + header[2]);
+            checkpoint.read(reader);
+        }
+        return checkpoint.reopen(file);
+    }
+
+    private void read(final BufferedReader reader) throws IOException {
+        final List<String> newDownloaded = new ArrayList<>();
+        final Map<String, IOException> newErrors = new LinkedHashMap<>();
+        final List<String> newFrontier = new ArrayList<>();
+        long newFrontierBytes = 0;
+        long position = committed;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            position += length(line);
+            final int space = line.indexOf(' ');
+            final String type = space < 0 ? line : line.substring(0, space);
+            final String value = space < 0 ? "" : line.substring(space + 1);
+            switch (type) {
+                case "downloaded":
+                    newDownloaded.add(unescape(value));
+                    break;
+                case "error":
+                    final int tab = value.indexOf('\t');
+                    newErrors.put(unescape(tab < 0 ? value : value.substring(0, tab)),
+                            new IOException(tab < 0 ? "" : unescape(value.substring(tab + 1))));
+                    break;
+                case "frontier":
+                    newFrontier.add(unescape(value));
+                    newFrontierBytes += length(line);
+                    break;
+                case "level":
+                    try {
+                        level = Integer.parseInt(value);
+                    } catch (final NumberFormatException e) {
+                        return;
+                    }
+                    downloaded.addAll(newDownloaded);
+                    errors.putAll(newErrors);
+                    frontier = new ArrayList<>(newFrontier);
+                    newDownloaded.clear();
+                    newErrors.clear();
+                    newFrontier.clear();
+                    supersededBytes += frontierBytes;
+                    frontierBytes = newFrontierBytes;
+                    newFrontierBytes = 0;
+                    committed = position;
+                    break;
+                default:
+                    return;
+            }
+        }
+    }
+
+    private static long length(final String line) {
+        return line.getBytes(StandardCharsets.UTF_8).length + 1;
+    }
+
+    private static String header(final String url, final int depth) {
+        return "crawl " + depth + " " + escape(url);
+    }
+
+    private static String escape(final String s) {
+        final StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            switch (c) {
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                default:
+                    sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String unescape(final String s) {
+        final StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            if (c != '\\' || i + 1 == s.length()) {
+                sb.append(c);
+                continue;
+            }
+            final char escaped = s.charAt(++i);
+            sb.append(escaped == 't' ? '\t' : escaped == 'r' ? '\r' : escaped == 'n' ? '\n' : escaped);
+        }
+        return sb.toString();
+    }
+
+    private CrawlCheckpoint reopen(final Path file) throws IOException {
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(committed);
+        }
+        final CrawlCheckpoint checkpoint = new CrawlCheckpoint(file, url, depth, append(file));
+        checkpoint.level = level;
+        checkpoint.committed = committed;
+        checkpoint.frontierBytes = frontierBytes;
+        checkpoint.supersededBytes = supersededBytes;
+        checkpoint.downloaded.addAll(downloaded);
+        checkpoint.errors.putAll(errors);
+        checkpoint.frontier = frontier;
+        checkpoint.writtenDownloaded = downloaded.size();
+        checkpoint.writtenErrors.addAll(errors.keySet());
+        return checkpoint;
+    }
+
+    private static BufferedWriter append(final Path file) throws IOException {
+        return Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Appends pages finished since the previous call and commits {@code level}.
+     * Failures are reported and do not stop the crawl.
+     */
+    void write(final int level, final List<String> downloaded, final Map<String, IOException> errors,
+               final Collection<String> frontier) {
+        try {
+            final List<String> newDownloaded;
+            synchronized (downloaded) {
+                newDownloaded = new ArrayList<>(downloaded.subList(writtenDownloaded, downloaded.size()));
+            }
+            long written = 0;
+            for (final String url : newDownloaded) {
+                written += writeLine(writer, "downloaded " + escape(url));
+            }
+            writtenDownloaded += newDownloaded.size();
+            for (final Map.Entry<String, IOException> error : errors.entrySet()) {
+                if (writtenErrors.add(error.getKey())) {
+                    written += writeError(writer, error.getKey(), error.getValue());
+                }
+            }
+            long newFrontierBytes = 0;
+            for (final String url : frontier) {
+                newFrontierBytes += writeLine(writer, "frontier " + escape(url));
+            }
+            written += newFrontierBytes + writeLine(writer, "level " + level);
+            writer.flush();
+            committed += written;
+            supersededBytes += frontierBytes;
+            frontierBytes = newFrontierBytes;
+            if (supersededBytes * 2 >= committed) {
+                compact(level, downloaded, errors, frontier);
+            }
+        } catch (final IOException e) {
+            System.err.println("Can't write checkpoint: " + e.getMessage());
+        }
+    }
+
+    private void compact(final int level, final List<String> downloaded, final Map<String, IOException> errors,
+                         final Collection<String> frontier) throws IOException {
+        final Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), "crawl", ".checkpoint");
+        boolean closed = false;
+        try {
+            long written = 0;
+            long newFrontierBytes = 0;
+            try (final BufferedWriter out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                written += writeLine(out, header(url, depth));
+                synchronized (downloaded) {
+                    for (final String url : downloaded) {
+                        written += writeLine(out, "downloaded " + escape(url));
+                    }
+                    writtenDownloaded = downloaded.size();
+                }
+                for (final Map.Entry<String, IOException> error : errors.entrySet()) {
+                    writtenErrors.add(error.getKey());
+                    written += writeError(out, error.getKey(), error.getValue());
+                }
+                for (final String url : frontier) {
+                    newFrontierBytes += writeLine(out, "frontier " + escape(url));
+                }
+                written += newFrontierBytes + writeLine(out, "level " + level);
+            }
+            closed = true;
+            writer.close();
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            committed = written;
+            frontierBytes = newFrontierBytes;
+            supersededBytes = 0;
+        } finally {
+            Files.deleteIfExists(temp);
+            if (closed) {
+                writer = append(file);
+            }
+        }
+    }
+
+    private static long writeError(final BufferedWriter out, final String url, final IOException error)
+            throws IOException {
+        final String message = Objects.requireNonNullElse(error.getMessage(), "");
+        return writeLine(out, "error " + escape(url) + "\t" + escape(message));
+    }
+
+    private static long writeLine(final BufferedWriter out, final String line) throws IOException {
+        out.write(line);
+        out.write('\n');
+        return length(line);
+    }
+
+    @Override
+    public void close() {
+        try {
+            writer.close();
+        } catch (final IOException e) {
+            System.err.println("Can't close checkpoint: " + e.getMessage());
+        }
+    }
+}
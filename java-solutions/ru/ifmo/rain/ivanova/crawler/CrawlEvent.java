@@ -0,0 +1,55 @@
+package ru.ifmo.rain.ivanova.crawler;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Event of a crawl, published by {@link WebCrawler#publish(String, int, int)}.
+ */
+public class CrawlEvent {
+    /**
+     * Kind of event, matching methods of {@link CrawlListener}.
+     */
+    public enum Type {
+        DOWNLOADED, LINKS, ERROR
+    }
+
+    private final Type type;
+    private final String url;
+    private final List<String> links;
+    private final IOException error;
+
+    CrawlEvent(final Type type, final String url, final List<String> links, final IOException error) {
+        this.type = type;
+        this.url = url;
+        this.links = links;
+        this.error = error;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Returns extracted links of {@link Type#LINKS} event, {@code null} otherwise.
+     */
+    public List<String> getLinks() {
+        return links;
+    }
+
+    /**
+     * Returns cause of {@link Type#ERROR} event, {@code null} otherwise.
+     */
+    public IOException getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return type + " " + url;
+    }
+}
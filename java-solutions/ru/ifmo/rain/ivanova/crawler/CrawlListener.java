@@ -0,0 +1,36 @@
+package ru.ifmo.rain.ivanova.crawler;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Receiver of crawl progress, see {@link WebCrawler#download(String, int, CrawlListener)}.
+ * Methods are called concurrently from crawler threads and should return quickly.
+ */
+public interface CrawlListener {
+    /**
+     * Called when page is downloaded.
+     *
+     * @param url URL of the page.
+     */
+    void onDownloaded(String url);
+
+    /**
+     * Called when links of a downloaded page are extracted.
+     * Links of pages at the last depth level are extracted only to fill a {@link LinkCache}.
+     *
+     * @param url   URL of the page.
+     * @param links extracted links.
+     */
+    default void onLinks(final String url, final List<String> links) {
+    }
+
+    /**
+     * Called when page can't be downloaded or its links can't be extracted.
+     *
+     * @param url   URL of the page.
+     * @param error cause.
+     */
+    default void onError(final String url, final IOException error) {
+    }
+}
@@ -0,0 +1,283 @@
+package ru.ifmo.rain.ivanova.crawler;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of all downloads of a {@link WebCrawler}: pages, errors by exception type, busy time
+ * of downloaders and extractors, pages waiting in host queues per remaining depth and per-host downloads.
+ * <p>
+ * Counters are updated by crawler threads and may be read concurrently. Utilisation is busy time
+ * divided by elapsed time and number of threads since creation of the crawler, so it is low
+ * for a crawler which is mostly idle between downloads.
+ */
+public class CrawlMetrics implements AutoCloseable {
+    private final int downloaders;
+    private final int extractors;
+    private final long start = System.nanoTime();
+    private final LongAdder pages = new LongAdder();
+    private final ConcurrentMap<String, LongAdder> errors = new ConcurrentHashMap<>();
+    private final AtomicLong downloadNanos = new AtomicLong();
+    private final AtomicLong extractNanos = new AtomicLong();
+    private final AtomicInteger activeExtractors = new AtomicInteger();
+    private final ConcurrentMap<Integer, LongAdder> queuedByDepth = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Host> hosts = new ConcurrentHashMap<>();
+    private static final int MAX_HOSTS = 1 << 16;
+    private volatile int sweepAt = MAX_HOSTS;
+    private ScheduledExecutorService reporter;
+
+    /**
+     * Counters of one host.
+     */
+    public static class Host {
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger waiting = new AtomicInteger();
+        private final AtomicLong downloads = new AtomicLong();
+        private final AtomicLong nanos = new AtomicLong();
+        private final AtomicInteger users = new AtomicInteger();
+
+        /**
+         * Returns number of downloads from this host running now.
+         */
+        public int getInFlight() {
+            return inFlight.get();
+        }
+
+        /**
+         * Returns number of pages of this host waiting for download.
+         */
+        public int getWaiting() {
+            return waiting.get();
+        }
+
+        /**
+         * Returns number of finished downloads from this host.
+         */
+        public long getDownloads() {
+            return downloads.get();
+        }
+
+        /**
+         * Returns average time of a download from this host in milliseconds.
+         */
+        public double getAverageLatencyMillis() {
+            final long downloads = this.downloads.get();
+            return downloads == 0 ? 0 : nanos.get() / 1e6 / downloads;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%d in flight, %d waiting, %d downloads, %.1f ms",
+                    getInFlight(), getWaiting(), getDownloads(), getAverageLatencyMillis());
+        }
+    }
+
+    CrawlMetrics(final int downloaders, final int extractors) {
+        this.downloaders = downloaders;
+        this.extractors = extractors;
+    }
+
+    /**
+     * Returns counters of host for a new user, which calls {@link #release(Host)} when it is discarded.
+     */
+    Host host(final String host) {
+        if (hosts.size() >= sweepAt) {
+            sweep();
+        }
+        return hosts.compute(host, (unused, counters) -> {
+            final Host result = counters == null ? new Host() : counters;
+            result.users.incrementAndGet();
+            return result;
+        });
+    }
+
+    void release(final Host host) {
+        host.users.decrementAndGet();
+    }
+
+    // Drops hosts without users. Next sweep happens when the map doubles, so sweeps take
+    // amortised constant time per host.
+    private synchronized void sweep() {
+        if (hosts.size() < sweepAt) {
+            return;
+        }
+        for (final String host : hosts.keySet()) {
+            hosts.computeIfPresent(host, (unused, counters) -> counters.users.get() == 0 ? null : counters);
+        }
+        sweepAt = Math.max(MAX_HOSTS, hosts.size() * 2);
+    }
+
+    void queued(final Host host, final int depth, final long count) {
+        host.waiting.addAndGet((int) count);
+        queuedByDepth.computeIfAbsent(depth, unused -> new LongAdder()).add(count);
+    }
+
+    void dequeued(final Host host, final int depth, final long count) {
+        queued(host, depth, -count);
+    }
+
+    void downloadStarted(final Host host) {
+        host.inFlight.incrementAndGet();
+    }
+
+    void downloadFinished(final Host host, final long nanos) {
+        host.inFlight.decrementAndGet();
+        host.downloads.incrementAndGet();
+        host.nanos.addAndGet(nanos);
+        downloadNanos.addAndGet(nanos);
+    }
+
+    void extractStarted() {
+        activeExtractors.incrementAndGet();
+    }
+
+    void extractFinished(final long nanos) {
+        activeExtractors.decrementAndGet();
+        extractNanos.addAndGet(nanos);
+    }
+
+    /**
+     * Returns listener, which counts pages and errors and passes them to {@code listener}.
+     */
+    CrawlListener count(final CrawlListener listener) {
+        return new CrawlListener() {
+            @Override
+            public void onDownloaded(final String url) {
+                pages.increment();
+                listener.onDownloaded(url);
+            }
+
+            @Override
+            public void onLinks(final String url, final List<String> links) {
+                listener.onLinks(url, links);
+            }
+
+            @Override
+            public void onError(final String url, final IOException error) {
+                errors.computeIfAbsent(error.getClass().getName(), unused -> new LongAdder()).increment();
+                listener.onError(url, error);
+            }
+        };
+    }
+
+    private double seconds() {
+        return Math.max(System.nanoTime() - start, 1) / 1e9;
+    }
+
+    /**
+     * Returns number of downloaded pages.
+     */
+    public long getPages() {
+        return pages.sum();
+    }
+
+    /**
+     * Returns number of downloaded pages per second since creation of the crawler.
+     */
+    public double getPagesPerSecond() {
+        return getPages() / seconds();
+    }
+
+    /**
+     * Returns numbers of errors by exception class name.
+     */
+    public Map<String, Long> getErrors() {
+        final Map<String, Long> result = new TreeMap<>();
+        errors.forEach((type, count) -> result.put(type, count.sum()));
+        return result;
+    }
+
+    /**
+     * Returns share of time downloaders were busy.
+     */
+    public double getDownloaderUtilisation() {
+        return downloadNanos.get() / 1e9 / seconds() / downloaders;
+    }
+
+    /**
+     * Returns share of time extractors were busy.
+     */
+    public double getExtractorUtilisation() {
+        return extractNanos.get() / 1e9 / seconds() / extractors;
+    }
+
+    /**
+     * Returns number of extractors running now.
+     */
+    public int getActiveExtractors() {
+        return activeExtractors.get();
+    }
+
+    /**
+     * Returns numbers of pages waiting in host queues by remaining depth.
+     */
+    public Map<Integer, Long> getQueuedByDepth() {
+        final Map<Integer, Long> result = new TreeMap<>(Comparator.reverseOrder());
+        queuedByDepth.forEach((depth, count) -> {
+            final long sum = count.sum();
+            if (sum != 0) {
+                result.put(depth, sum);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Returns counters of hosts. When there are more than {@value #MAX_HOSTS} hosts,
+     * hosts not used by running crawls are dropped.
+     */
+    public Map<String, Host> getHosts() {
+        return Collections.unmodifiableMap(hosts);
+    }
+
+    /**
+     * Returns one-line summary of the counters.
+     */
+    public String report() {
+        int inFlight = 0;
+        int waiting = 0;
+        for (final Host host : hosts.values()) {
+            inFlight += host.getInFlight();
+            waiting += host.getWaiting();
+        }
+        return String.format(Locale.ROOT, "%.1fs: %d pages (%.1f pages/s), errors %s, "
+                        + "downloaders %.0f%% (%d in flight, %d waiting), extractors %.0f%% (%d active), "
+                        + "waiting by depth %s, %d hosts",
+                seconds(), getPages(), getPagesPerSecond(), getErrors(),
+                getDownloaderUtilisation() * 100, inFlight, waiting,
+                getExtractorUtilisation() * 100, getActiveExtractors(), getQueuedByDepth(), hosts.size());
+    }
+
+    /**
+     * Prints {@link #report()} to {@code System.err} every {@code periodSeconds} seconds
+     * until the crawler is closed.
+     *
+     * @param periodSeconds period of reports.
+     */
+    public synchronized void startReporting(final long periodSeconds) {
+        if (reporter == null) {
+            reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "crawl-metrics");
+                thread.setDaemon(true);
+                return thread;
+            });
+            reporter.scheduleAtFixedRate(() -> System.err.println(report()),
+                    periodSeconds, periodSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+        }
+    }
+}
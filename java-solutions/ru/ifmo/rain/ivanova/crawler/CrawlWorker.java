@@ -0,0 +1,199 @@
+package ru.ifmo.rain.ivanova.crawler;
+
+import info.kgeorgiy.java.advanced.crawler.CachingDownloader;
+import info.kgeorgiy.java.advanced.crawler.Downloader;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Worker of {@link DistributedCrawler}, which crawls hosts of one partition.
+ * <p>
+ * Protocol over a TCP connection from the coordinator, strings are written as their length
+ * in bytes followed by UTF-8 bytes:
+ * <ul>
+ *     <li>{@code START index partitions} starts a crawl of partition {@code index};</li>
+ *     <li>{@code LEVEL remaining urls} downloads given URLs of this partition and links to this
+ *     partition found on the previous level, answered with downloaded URLs, errors as URL and
+ *     message pairs, links to other partitions and number of links left for the next level;</li>
+ *     <li>{@code END} finishes the crawl.</li>
+ * </ul>
+ * Lists are written as their size followed by elements.
+ */
+public class CrawlWorker implements AutoCloseable {
+    static final byte START = 1;
+    static final byte LEVEL = 2;
+    static final byte END = 3;
+    private static final int MAX_MESSAGE = 1024;
+    private static final int IDLE_TIMEOUT = 1200000;
+
+    private final WebCrawler crawler;
+
+    /**
+     * Creates worker, which downloads pages with its own {@link WebCrawler}.
+     *
+     * @param downloader  {@code Downloader} to use.
+     * @param downloaders number of downloading pages.
+     * @param extractors  number of processing pages.
+     * @param perHost     number of downloading pages per one host.
+     */
+    public CrawlWorker(final Downloader downloader, final int downloaders, final int extractors, final int perHost) {
+        crawler = new WebCrawler(downloader, downloaders, extractors, perHost);
+    }
+
+    static int partition(final String host, final int partitions) {
+        return Math.floorMod(host.hashCode(), partitions);
+    }
+
+    static void writeString(final DataOutputStream out, final String s) throws IOException {
+        final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(final DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Incorrect string length " + length);
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void writeList(final DataOutputStream out, final Collection<String> list) throws IOException {
+        out.writeInt(list.size());
+        for (final String s : list) {
+            writeString(out, s);
+        }
+    }
+
+    static List<String> readList(final DataInputStream in) throws IOException {
+        final int size = in.readInt();
+        final List<String> list = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            list.add(readString(in));
+        }
+        return list;
+    }
+
+    /**
+     * Serves coordinators one at a time until the thread is interrupted or the socket fails.
+     * A coordinator silent for {@value #IDLE_TIMEOUT} ms is disconnected.
+     *
+     * @param port port to listen.
+     * @throws IOException if port can't be listened.
+     */
+    public void serve(final int port) throws IOException {
+        try (final ServerSocket server = new ServerSocket(port)) {
+            while (!Thread.currentThread().isInterrupted()) {
+                try (final Socket socket = server.accept()) {
+                    socket.setTcpNoDelay(true);
+                    socket.setSoTimeout(IDLE_TIMEOUT);
+                    serve(new DataInputStream(new BufferedInputStream(socket.getInputStream())),
+                            new DataOutputStream(new BufferedOutputStream(socket.getOutputStream())));
+                } catch (final IOException e) {
+                    System.err.println("Coordinator connection failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void serve(final DataInputStream in, final DataOutputStream out) throws IOException {
+        WebCrawler.PartitionDownloader partition = null;
+        try {
+            while (true) {
+                final byte command;
+                try {
+                    command = in.readByte();
+                } catch (final EOFException e) {
+                    return;
+                }
+                switch (command) {
+                    case START:
+                        if (partition != null) {
+                            partition.close();
+                        }
+                        partition = crawler.partition(in.readInt(), in.readInt());
+                        break;
+                    case LEVEL:
+                        if (partition == null) {
+                            throw new IOException("LEVEL before START");
+                        }
+                        final int remaining = in.readInt();
+                        final List<String> foreign = partition.level(readList(in), remaining);
+                        writeList(out, partition.takeDownloaded());
+                        final Map<String, IOException> errors = partition.takeErrors();
+                        out.writeInt(errors.size());
+                        for (final Map.Entry<String, IOException> error : errors.entrySet()) {
+                            writeString(out, error.getKey());
+                            final String message = Objects.requireNonNullElse(error.getValue().getMessage(), "");
+                            writeString(out, message.substring(0, Math.min(message.length(), MAX_MESSAGE)));
+                        }
+                        writeList(out, foreign);
+                        out.writeInt(partition.pending());
+                        out.flush();
+                        break;
+                    case END:
+                        if (partition != null) {
+                            partition.close();
+                            partition = null;
+                        }
+                        break;
+                    default:
+                        throw new IOException("Unknown command " + command);
+                }
+            }
+        } finally {
+            if (partition != null) {
+                partition.close();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        crawler.close();
+    }
+
+    private static int parseArgument(final String[] args, final int index) {
+        return args.length <= index ? 1 : Integer.parseInt(args[index]);
+    }
+
+    private static Downloader newDownloader() throws IOException {
+        final String name = System.getProperty("crawler.downloader");
+        if (name == null) {
+            return new CachingDownloader();
+        }
+        try {
+            return Class.forName(name).asSubclass(Downloader.class).getConstructor().newInstance();
+        } catch (final ReflectiveOperationException | ClassCastException e) {
+            throw new IOException("Can't create downloader " + name + ": " + e, e);
+        }
+    }
+
+    /**
+     * Runs worker with {@code CachingDownloader}.
+     * Set {@code -Dcrawler.downloader=<class>} to use another {@code Downloader} with a public
+     * constructor without arguments, such as a fake one for tests.
+     *
+     * @param args port, number of downloading pages, number of processing pages and pages per host.
+     */
+    public static void main(final String[] args) {
+        if (args == null || args.length == 0 || Arrays.stream(args).anyMatch(Objects::isNull)) {
+            System.err.println("Usage: CrawlWorker port [downloaders [extractors [perHost]]]");
+            return;
+        }
+        try (final CrawlWorker worker = new CrawlWorker(newDownloader(),
+                parseArgument(args, 1), parseArgument(args, 2), parseArgument(args, 3))) {
+            worker.serve(Integer.parseInt(args[0]));
+        } catch (final NumberFormatException e) {
+            System.err.println("Incorrect arguments: " + e.getMessage());
+        } catch (final IOException e) {
+            System.err.println("Worker failed: " + e.getMessage());
+        }
+    }
+}
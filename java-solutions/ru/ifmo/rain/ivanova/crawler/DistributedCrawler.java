@@ -0,0 +1,235 @@
+package ru.ifmo.rain.ivanova.crawler;
+
+import info.kgeorgiy.java.advanced.crawler.Crawler;
+import info.kgeorgiy.java.advanced.crawler.Result;
+import info.kgeorgiy.java.advanced.crawler.URLUtils;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.Socket;
+import java.util.*;
+
+/**
+ * Coordinator of a crawl split between {@link CrawlWorker} processes.
+ * <p>
+ * Hosts are partitioned between workers by hash, each worker downloads pages of its hosts and
+ * keeps its own visited set. The crawl goes level by level: after each level workers return
+ * links to other partitions, which the coordinator passes to their owners for the next level,
+ * so the result is the same as of {@link WebCrawler#download(String, int)}.
+ * <p>
+ * A worker, which can't be connected, fails or doesn't answer a level in time, is dropped from the crawl:
+ * URLs sent to it on that level and URLs of its partition found later are reported as errors.
+ * Links it found on the failed level and didn't return are lost.
+ */
+public class DistributedCrawler implements Crawler {
+    private static final int CONNECT_TIMEOUT = 10000;
+    private static final int LEVEL_TIMEOUT = 600000;
+
+    private final List<InetSocketAddress> workers;
+    private final int connectTimeout;
+    private final int levelTimeout;
+
+    /**
+     * Creates coordinator of running workers, which waits {@value #CONNECT_TIMEOUT} ms for a connection
+     * and {@value #LEVEL_TIMEOUT} ms for a level.
+     *
+     * @param workers addresses of workers.
+     */
+    public DistributedCrawler(final List<InetSocketAddress> workers) {
+        this(workers, CONNECT_TIMEOUT, LEVEL_TIMEOUT);
+    }
+
+    /**
+     * Creates coordinator of running workers.
+     *
+     * @param workers              addresses of workers.
+     * @param connectTimeoutMillis time to wait for a connection to a worker.
+     * @param levelTimeoutMillis   time to wait for an answer of a worker to a level.
+     */
+    public DistributedCrawler(final List<InetSocketAddress> workers, final int connectTimeoutMillis,
+                              final int levelTimeoutMillis) {
+        this.workers = List.copyOf(workers);
+        this.connectTimeout = connectTimeoutMillis;
+        this.levelTimeout = levelTimeoutMillis;
+    }
+
+    private class Connection implements Closeable {
+        final Socket socket = new Socket();
+        final DataInputStream in;
+        final DataOutputStream out;
+
+        Connection(final InetSocketAddress address) throws IOException {
+            try {
+                socket.connect(address, connectTimeout);
+                socket.setSoTimeout(levelTimeout);
+                socket.setTcpNoDelay(true);
+                in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            } catch (final IOException e) {
+                socket.close();
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    private int partition(final String url) {
+        try {
+            return CrawlWorker.partition(URLUtils.getHost(url), workers.size());
+        } catch (final MalformedURLException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public Result download(final String url, final int depth) {
+        final List<String> downloaded = new ArrayList<>();
+        final Map<String, IOException> errors = new HashMap<>();
+        final Connection[] connections = new Connection[workers.size()];
+        final IOException[] failures = new IOException[workers.size()];
+        try {
+            for (int i = 0; i < connections.length; i++) {
+                try {
+                    connections[i] = new Connection(workers.get(i));
+                    connections[i].out.writeByte(CrawlWorker.START);
+                    connections[i].out.writeInt(i);
+                    connections[i].out.writeInt(connections.length);
+                } catch (final IOException e) {
+                    fail(connections, failures, i, e);
+                }
+            }
+
+            List<Set<String>> forwarded = newPartitions();
+            forwarded.get(partition(url)).add(url);
+            int pending = 0;
+            for (int d = 0; d < depth && (pending > 0 || forwarded.stream().anyMatch(set -> !set.isEmpty())); d++) {
+                for (int i = 0; i < connections.length; i++) {
+                    if (connections[i] != null) {
+                        try {
+                            final DataOutputStream out = connections[i].out;
+                            out.writeByte(CrawlWorker.LEVEL);
+                            out.writeInt(depth - d);
+                            CrawlWorker.writeList(out, forwarded.get(i));
+                            out.flush();
+                        } catch (final IOException e) {
+                            fail(connections, failures, i, e);
+                        }
+                    }
+                    if (connections[i] == null) {
+                        lost(forwarded.get(i), i, failures[i], errors);
+                    }
+                }
+                final List<Set<String>> sent = forwarded;
+                forwarded = newPartitions();
+                pending = 0;
+                for (int i = 0; i < connections.length; i++) {
+                    if (connections[i] == null) {
+                        continue;
+                    }
+                    try {
+                        final DataInputStream in = connections[i].in;
+                        final List<String> levelDownloaded = CrawlWorker.readList(in);
+                        final int errorCount = in.readInt();
+                        final Map<String, IOException> levelErrors = new HashMap<>();
+                        for (int j = 0; j < errorCount; j++) {
+                            levelErrors.put(CrawlWorker.readString(in), new IOException(CrawlWorker.readString(in)));
+                        }
+                        final List<String> links = CrawlWorker.readList(in);
+                        final int left = in.readInt();
+                        downloaded.addAll(levelDownloaded);
+                        errors.putAll(levelErrors);
+                        for (final String link : links) {
+                            forwarded.get(partition(link)).add(link);
+                        }
+                        pending += left;
+                    } catch (final IOException e) {
+                        fail(connections, failures, i, e);
+                        lost(sent.get(i), i, e, errors);
+                    }
+                }
+            }
+
+            for (int i = 0; i < connections.length; i++) {
+                if (connections[i] != null) {
+                    try {
+                        connections[i].out.writeByte(CrawlWorker.END);
+                        connections[i].out.flush();
+                    } catch (final IOException e) {
+                        fail(connections, failures, i, e);
+                    }
+                }
+            }
+        } finally {
+            for (final Connection connection : connections) {
+                close(connection);
+            }
+        }
+        return new Result(downloaded, errors);
+    }
+
+    private void fail(final Connection[] connections, final IOException[] failures, final int i,
+                      final IOException e) {
+        System.err.println("Worker " + workers.get(i) + " failed: " + e.getMessage());
+        failures[i] = e;
+        close(connections[i]);
+        connections[i] = null;
+    }
+
+    private void lost(final Collection<String> urls, final int i, final IOException cause,
+                      final Map<String, IOException> errors) {
+        for (final String url : urls) {
+            errors.put(url, new IOException("Worker " + workers.get(i) + " failed: " + cause.getMessage(), cause));
+        }
+    }
+
+    private static void close(final Connection connection) {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (final IOException e) {
+                System.err.println("Can't close worker connection: " + e.getMessage());
+            }
+        }
+    }
+
+    private List<Set<String>> newPartitions() {
+        final List<Set<String>> partitions = new ArrayList<>();
+        for (int i = 0; i < workers.size(); i++) {
+            partitions.add(new LinkedHashSet<>());
+        }
+        return partitions;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Downloads web site using workers.
+     *
+     * @param args start URL, depth and {@code host:port} of each worker.
+     */
+    public static void main(final String[] args) {
+        if (args == null || args.length < 3 || Arrays.stream(args).anyMatch(Objects::isNull)) {
+            System.err.println("Usage: DistributedCrawler url depth host:port...");
+            return;
+        }
+        final List<InetSocketAddress> workers = new ArrayList<>();
+        try {
+            for (int i = 2; i < args.length; i++) {
+                final int colon = args[i].lastIndexOf(':');
+                workers.add(new InetSocketAddress(args[i].substring(0, colon),
+                        Integer.parseInt(args[i].substring(colon + 1))));
+            }
+            final Result result = new DistributedCrawler(workers).download(args[0], Integer.parseInt(args[1]));
+            System.out.println(result.getDownloaded().size() + " pages, " + result.getErrors().size() + " errors");
+        } catch (final NumberFormatException | StringIndexOutOfBoundsException e) {
+            System.err.println("Incorrect arguments: " + e.getMessage());
+        }
+    }
+}
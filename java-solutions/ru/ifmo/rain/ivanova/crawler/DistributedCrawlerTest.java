@@ -0,0 +1,116 @@
+package ru.ifmo.rain.ivanova.crawler;
+
+import info.kgeorgiy.java.advanced.crawler.Result;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DistributedCrawlerTest {
+    private static final int PORT = 28810;
+    private static final int WORKERS = 3;
+    private static final int DEPTH = 6;
+    private static final FakeDownloader downloader = new FakeDownloader();
+    private static final List<CrawlWorker> workers = new ArrayList<>();
+
+    @BeforeClass
+    public static void beforeClass() {
+        for (int i = 0; i < WORKERS; i++) {
+            final CrawlWorker worker = new CrawlWorker(downloader, 8, 4, 2);
+            final int port = PORT + i;
+            final Thread thread = new Thread(() -> {
+                try {
+                    worker.serve(port);
+                } catch (final IOException e) {
+                    System.err.println("Can't serve " + port + ": " + e.getMessage());
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+            workers.add(worker);
+        }
+    }
+
+    @AfterClass
+    public static void afterClass() {
+        workers.forEach(CrawlWorker::close);
+    }
+
+    private static List<InetSocketAddress> addresses(final int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> new InetSocketAddress("localhost", PORT + i))
+                .collect(Collectors.toList());
+    }
+
+    // Start page of a host, which belongs to partition 0 of 2.
+    private static String firstPartitionUrl() {
+        return IntStream.range(0, 10).mapToObj(FakeDownloader::url)
+                .filter(url -> CrawlWorker.partition(url.substring(7, url.indexOf('/', 7)), 2) == 0)
+                .findFirst().orElseThrow();
+    }
+
+    private static void checkExpected(final Result result, final String url) {
+        final FakeDownloader.Expected expected = downloader.expected(url, DEPTH);
+        assertEquals(expected.downloaded, new HashSet<>(result.getDownloaded()));
+        assertEquals(expected.downloaded.size(), result.getDownloaded().size());
+        assertEquals(expected.errors, result.getErrors().keySet());
+    }
+
+    private static Result download(final List<InetSocketAddress> addresses, final String url) {
+        return new DistributedCrawler(addresses, 1000, 1000).download(url, DEPTH);
+    }
+
+    @Test
+    public void test00_oneWorker() {
+        checkExpected(download(addresses(1), FakeDownloader.url(0)), FakeDownloader.url(0));
+    }
+
+    @Test
+    public void test01_threeWorkersAsOne() {
+        for (int page = 1; page < 4; page++) {
+            final String url = FakeDownloader.url(page);
+            final Result one = download(addresses(1), url);
+            final Result three = download(addresses(WORKERS), url);
+            checkExpected(three, url);
+            assertEquals(new HashSet<>(one.getDownloaded()), new HashSet<>(three.getDownloaded()));
+            assertEquals(one.getErrors().keySet(), three.getErrors().keySet());
+        }
+    }
+
+    @Test
+    public void test02_deadWorker() {
+        final String url = firstPartitionUrl();
+        final List<InetSocketAddress> addresses = List.of(addresses(1).get(0),
+                new InetSocketAddress("localhost", PORT + WORKERS));
+        checkFailedWorker(download(addresses, url), url);
+    }
+
+    @Test(timeout = 30000)
+    public void test03_hungWorker() throws IOException {
+        final String url = firstPartitionUrl();
+        try (final ServerSocket hung = new ServerSocket(PORT + WORKERS + 1)) {
+            final List<InetSocketAddress> addresses = List.of(addresses(1).get(0),
+                    new InetSocketAddress("localhost", hung.getLocalPort()));
+            checkFailedWorker(download(addresses, url), url);
+        }
+    }
+
+    private static void checkFailedWorker(final Result result, final String url) {
+        final Set<String> expected = downloader.expected(url, DEPTH).downloaded;
+        assertTrue(result.getDownloaded().contains(url));
+        assertTrue(expected.containsAll(result.getDownloaded()));
+        assertTrue(result.getErrors().values().stream().anyMatch(e -> e.getMessage().startsWith("Worker ")));
+    }
+}
@@ -0,0 +1,103 @@
+package ru.ifmo.rain.ivanova.crawler;
+
+import info.kgeorgiy.java.advanced.crawler.Document;
+import info.kgeorgiy.java.advanced.crawler.Downloader;
+import info.kgeorgiy.java.advanced.crawler.URLUtils;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generated site for crawler tests: page {@code i} is on host {@code i % 10} and links to
+ * five random pages. Every 13th page fails to download and every 17th page also links to
+ * a malformed URL. Has a public constructor without arguments for {@link CrawlWorker},
+ * which generates 3000 pages.
+ */
+public class FakeDownloader implements Downloader {
+    private static final int PAGES = 3000;
+    private static final int HOSTS = 10;
+
+    private final Map<String, List<String>> links = new HashMap<>();
+    private final AtomicInteger downloads = new AtomicInteger();
+
+    public FakeDownloader() {
+        this(PAGES);
+    }
+
+    FakeDownloader(final int pages) {
+        final Random random = new Random(7);
+        for (int i = 0; i < pages; i++) {
+            final List<String> pageLinks = new ArrayList<>();
+            for (int j = 0; j < 5; j++) {
+                pageLinks.add(url(random.nextInt(pages)));
+            }
+            if (i % 17 == 0) {
+                pageLinks.add("bad url " + i);
+            }
+            links.put(url(i), pageLinks);
+        }
+    }
+
+    static String url(final int page) {
+        return "http://h" + page % HOSTS + ".com/p" + page;
+    }
+
+    private static boolean fails(final int page) {
+        return page % 13 == 0;
+    }
+
+    private static int page(final String url) {
+        return Integer.parseInt(url.substring(url.lastIndexOf("/p") + 2));
+    }
+
+    @Override
+    public Document download(final String url) throws IOException {
+        downloads.incrementAndGet();
+        final List<String> pageLinks = links.get(url);
+        if (pageLinks == null || fails(page(url))) {
+            throw new IOException("Not found " + url);
+        }
+        return () -> pageLinks;
+    }
+
+    int downloads() {
+        return downloads.get();
+    }
+
+    /**
+     * Returns result of a breadth-first crawl without threads.
+     */
+    Expected expected(final String url, final int depth) {
+        final Expected expected = new Expected();
+        final Set<String> visited = new HashSet<>(List.of(url));
+        List<String> level = List.of(url);
+        for (int remaining = depth; remaining > 0; remaining--) {
+            final List<String> next = new ArrayList<>();
+            for (final String page : level) {
+                try {
+                    URLUtils.getHost(page);
+                } catch (final MalformedURLException e) {
+                    expected.errors.add(page);
+                    continue;
+                }
+                if (fails(page(page))) {
+                    expected.errors.add(page);
+                    continue;
+                }
+                expected.downloaded.add(page);
+                if (remaining > 1) {
+                    links.get(page).stream().filter(visited::add).forEach(next::add);
+                }
+            }
+            level = next;
+        }
+        return expected;
+    }
+
+    static class Expected {
+        final Set<String> downloaded = new HashSet<>();
+        final Set<String> errors = new HashSet<>();
+    }
+}
@@ -0,0 +1,343 @@
+package ru.ifmo.rain.ivanova.crawler;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Priority queue of pages to download from one host.
+ * <p>
+ * Pages with larger remaining depth go first, then pages preferred by {@code priority},
+ * then pages in order of addition. When a spill directory is given, at most {@code capacity}
+ * pages are kept in memory: the less important half of them is written to a spill file as a sorted run.
+ * Only the first page of each run is kept in memory, and {@link #poll()} merges runs with the memory,
+ * so pages come in the same order as without spilling. Runs are merged into a new file when there are
+ * more than {@code max(64, capacity)} of them, and the file is truncated when all of them are read.
+ * If the spill file can't be written, the queue keeps everything in memory. If it can't be read even
+ * after reopening, the pages left in it are lost and reported by {@link SpillException}.
+ * Not thread-safe, guarded by the owning {@code HostDownloader}.
+ */
+class HostQueue {
+    private static final int HEADER = Integer.BYTES + Long.BYTES + Integer.BYTES;
+    private static final int READ_AHEAD = 512;
+    private static final int WRITE_BUFFER = 1 << 16;
+    private static final int MIN_RUNS = 64;
+
+    static class Request {
+        final String url;
+        final int depth;
+        private final long seq;
+
+        private Request(final String url, final int depth, final long seq) {
+            this.url = url;
+            this.depth = depth;
+            this.seq = seq;
+        }
+    }
+
+    /**
+     * Thrown by {@link #poll()} when spilled pages can't be read back. Lost pages are the first pages
+     * of runs, which were kept in memory, and {@code unknown} pages of the {@code file}, which weren't.
+     */
+    static class SpillException extends UncheckedIOException {
+        private static final long serialVersionUID = 1L;
+
+        final transient String file;
+        final transient List<Request> requests;
+        final long lost;
+        final long unknown;
+        final transient Map<Integer, Long> lostByDepth;
+
+        private SpillException(final String file, final List<Request> requests,
+                               final Map<Integer, Long> lostByDepth, final IOException cause) {
+            super("Lost " + sum(lostByDepth) + " queued pages: " + cause.getMessage(), cause);
+            this.file = file;
+            this.requests = requests;
+            this.lost = sum(lostByDepth);
+            this.unknown = lost - requests.size();
+            this.lostByDepth = lostByDepth;
+        }
+
+        private static long sum(final Map<Integer, Long> counts) {
+            return counts.values().stream().mapToLong(Long::longValue).sum();
+        }
+    }
+
+    private static class Run {
+        private long position;
+        private final long end;
+        private Request head;
+
+        Run(final long position, final long end, final Request head) {
+            this.position = position;
+            this.end = end;
+            this.head = head;
+        }
+    }
+
+    private final Comparator<Request> order;
+    private final TreeSet<Request> queue;
+    private final PriorityQueue<Run> runs;
+    private int capacity;
+    private final Path spillDirectory;
+    private long seq = 0;
+    private Path spillFile;
+    private FileChannel channel;
+    private long end = 0;
+    private final Map<Integer, Long> spilledByDepth = new HashMap<>();
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_AHEAD);
+
+    HostQueue(final Comparator<String> priority, final int capacity, final Path spillDirectory) {
+        Comparator<Request> order = Comparator.comparingInt((Request request) -> request.depth).reversed();
+        if (priority != null) {
+            order = order.thenComparing(request -> request.url, priority);
+        }
+        this.order = order.thenComparingLong(request -> request.seq);
+        queue = new TreeSet<>(this.order);
+        runs = new PriorityQueue<>(Comparator.comparing(run -> run.head, this.order));
+        this.capacity = spillDirectory == null ? Integer.MAX_VALUE : Math.max(2, capacity);
+        this.spillDirectory = spillDirectory;
+    }
+
+    void add(final String url, final int depth) {
+        queue.add(new Request(url, depth, seq++));
+        if (queue.size() > capacity) {
+            spill();
+        }
+    }
+
+    Request poll() {
+        final Run run = runs.peek();
+        if (run == null || !queue.isEmpty() && order.compare(queue.first(), run.head) < 0) {
+            return queue.pollFirst();
+        }
+        runs.poll();
+        final Request request = run.head;
+        spilledByDepth.merge(request.depth, -1L, Long::sum);
+        try {
+            advance(run);
+        } catch (final IOException e) {
+            queue.add(request);
+            throw fail(e);
+        }
+        if (runs.isEmpty()) {
+            truncate();
+        }
+        return request;
+    }
+
+    boolean isEmpty() {
+        return queue.isEmpty() && runs.isEmpty();
+    }
+
+    private void advance(final Run run) throws IOException {
+        if (run.position < run.end) {
+            run.head = read(run);
+            runs.add(run);
+        }
+    }
+
+    // Writes the less important half of the queue as a sorted run.
+    private void spill() {
+        final List<Request> tail = new ArrayList<>();
+        while (queue.size() > capacity / 2) {
+            tail.add(queue.pollLast());
+        }
+        Collections.reverse(tail);
+        final long start = end;
+        try {
+            if (channel == null) {
+                final Path file = Files.createTempFile(spillDirectory, "host", ".queue");
+                try {
+                    channel = open(file);
+                } catch (final IOException e) {
+                    Files.deleteIfExists(file);
+                    throw e;
+                }
+                spillFile = file;
+            }
+            end = write(channel, start, tail.subList(1, tail.size()));
+        } catch (final IOException e) {
+            System.err.println("Can't spill host queue, keeping it in memory: " + e.getMessage());
+            end = start;
+            queue.addAll(tail);
+            capacity = Integer.MAX_VALUE;
+            return;
+        }
+        runs.add(new Run(start, end, tail.get(0)));
+        tail.forEach(request -> spilledByDepth.merge(request.depth, 1L, Long::sum));
+        if (runs.size() > Math.max(MIN_RUNS, capacity)) {
+            try {
+                merge();
+            } catch (final IOException e) {
+                System.err.println("Can't merge spilled host queue, keeping the rest in memory: " + e.getMessage());
+                capacity = Integer.MAX_VALUE;
+            }
+        }
+    }
+
+    // Merges all runs into a new file, which replaces the current one.
+    private void merge() throws IOException {
+        final Path mergedFile = Files.createTempFile(spillDirectory, "host", ".queue");
+        final List<Request> merged = new ArrayList<>();
+        long mergedEnd = 0;
+        Request head = null;
+        FileChannel mergedChannel = null;
+        try {
+            mergedChannel = open(mergedFile);
+            while (!runs.isEmpty()) {
+                final Run run = runs.peek();
+                final Request next = run.position < run.end ? read(run) : null;
+                runs.poll();
+                if (head == null) {
+                    head = run.head;
+                } else {
+                    merged.add(run.head);
+                }
+                if (next != null) {
+                    run.head = next;
+                    runs.add(run);
+                }
+                if (merged.size() >= WRITE_BUFFER / HEADER) {
+                    mergedEnd = write(mergedChannel, mergedEnd, merged);
+                    merged.clear();
+                }
+            }
+            mergedEnd = write(mergedChannel, mergedEnd, merged);
+        } catch (final IOException e) {
+            // Runs keep their unread pages, pages taken from them are moved to memory.
+            if (head != null) {
+                merged.add(head);
+            }
+            for (final Request request : merged) {
+                queue.add(request);
+                spilledByDepth.merge(request.depth, -1L, Long::sum);
+            }
+            if (mergedChannel != null) {
+                mergedChannel.close();
+            }
+            Files.deleteIfExists(mergedFile);
+            throw e;
+        }
+        close();
+        spillFile = mergedFile;
+        channel = mergedChannel;
+        end = mergedEnd;
+        runs.add(new Run(0, end, head));
+    }
+
+    private void truncate() {
+        try {
+            channel.truncate(0);
+            end = 0;
+        } catch (final IOException e) {
+            System.err.println("Can't truncate spilled host queue: " + e.getMessage());
+        }
+    }
+
+    private static FileChannel open(final Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private static long write(final FileChannel channel, long position, final List<Request> requests)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER);
+        for (final Request request : requests) {
+            final byte[] url = request.url.getBytes(StandardCharsets.UTF_8);
+            if (buffer.remaining() < HEADER + url.length) {
+                position = flush(channel, position, buffer);
+                if (buffer.capacity() < HEADER + url.length) {
+                    buffer = ByteBuffer.allocate(HEADER + url.length);
+                }
+            }
+            buffer.putInt(request.depth).putLong(request.seq).putInt(url.length).put(url);
+        }
+        return flush(channel, position, buffer);
+    }
+
+    private static long flush(final FileChannel channel, long position, final ByteBuffer buffer)
+            throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        buffer.clear();
+        return position;
+    }
+
+    // Reads the next request of the run, reopening the file once if it fails.
+    private Request read(final Run run) throws IOException {
+        try {
+            return readRecord(run);
+        } catch (final IOException e) {
+            try {
+                channel.close();
+            } catch (final IOException ignored) {
+            }
+            channel = open(spillFile);
+            return readRecord(run);
+        }
+    }
+
+    private Request readRecord(final Run run) throws IOException {
+        readBuffer.clear().limit((int) Math.min(READ_AHEAD, run.end - run.position));
+        readFully(readBuffer, run.position);
+        readBuffer.flip();
+        final int depth = readBuffer.getInt();
+        final long seq = readBuffer.getLong();
+        final byte[] url = new byte[readBuffer.getInt()];
+        final int buffered = Math.min(url.length, readBuffer.remaining());
+        readBuffer.get(url, 0, buffered);
+        readFully(ByteBuffer.wrap(url, buffered, url.length - buffered), run.position + HEADER + buffered);
+        run.position += HEADER + url.length;
+        return new Request(new String(url, StandardCharsets.UTF_8), depth, seq);
+    }
+
+    private void readFully(final ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            final int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("Spilled host queue is truncated");
+            }
+            position += read;
+        }
+    }
+
+    private SpillException fail(final IOException e) {
+        final String file = spillFile.toUri().toString();
+        final List<Request> requests = new ArrayList<>();
+        runs.forEach(run -> requests.add(run.head));
+        final Map<Integer, Long> lost = new HashMap<>(spilledByDepth);
+        lost.values().removeIf(count -> count == 0);
+        runs.clear();
+        spilledByDepth.clear();
+        capacity = Integer.MAX_VALUE;
+        close();
+        return new SpillException(file, requests, lost, e);
+    }
+
+    void close() {
+        if (spillFile != null) {
+            try {
+                channel.close();
+            } catch (final IOException e) {
+                System.err.println("Can't close spilled host queue: " + e.getMessage());
+            }
+            try {
+                Files.deleteIfExists(spillFile);
+            } catch (final IOException e) {
+                System.err.println("Can't delete spilled host queue: " + e.getMessage());
+            }
+            spillFile = null;
+            channel = null;
+            end = 0;
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package ru.ifmo.rain.ivanova.crawler;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Cache of links extracted from downloaded pages, which may be shared by crawls and crawlers,
+ * see {@link WebCrawler#cache(LinkCache)}.
+ * <p>
+ * Pages are keyed by normalised URL and expire {@code ttlMillis} after download. At most
+ * {@code capacity} pages are kept in memory and evicted in least-recently-used order. When a
+ * directory is given, evicted pages are written to it, one file per page, and read back on a miss
+ * in memory; expired files are deleted when read. At most {@code diskCapacity} files are kept,
+ * the oldest written ones are deleted first. Files are read and written outside of the cache lock.
+ */
+public class LinkCache {
+    private static final String SUFFIX = ".links";
+
+    private final long ttl;
+    private final Path directory;
+    private final int diskCapacity;
+    private final Map<String, Entry> entries;
+    private final Set<Path> files = new LinkedHashSet<>();
+    private final List<Map.Entry<String, Entry>> evicted = new ArrayList<>();
+    private long hits = 0;
+    private long misses = 0;
+
+    private static class Entry {
+        final List<String> links;
+        final long expires;
+
+        Entry(final List<String> links, final long expires) {
+            this.links = links;
+            this.expires = expires;
+        }
+
+        boolean isExpired() {
+            return expires <= System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Creates cache, which keeps at most {@code 16 * capacity} files in {@code directory}.
+     *
+     * @param capacity  maximal number of pages in memory.
+     * @param ttlMillis time to keep links of a page.
+     * @param directory directory for pages evicted from memory, {@code null} to drop them.
+     */
+    public LinkCache(final int capacity, final long ttlMillis, final Path directory) {
+        this(capacity, ttlMillis, directory, (int) Math.min(16L * capacity, Integer.MAX_VALUE));
+    }
+
+    /**
+     * Creates cache.
+     *
+     * @param capacity     maximal number of pages in memory.
+     * @param ttlMillis    time to keep links of a page.
+     * @param directory    directory for pages evicted from memory, {@code null} to drop them.
+     * @param diskCapacity maximal number of files in {@code directory}, including ones left by earlier caches.
+     */
+    public LinkCache(final int capacity, final long ttlMillis, final Path directory, final int diskCapacity) {
+        this.ttl = ttlMillis;
+        this.directory = directory;
+        this.diskCapacity = diskCapacity;
+        entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+                if (size() > capacity) {
+                    if (directory != null && !eldest.getValue().isExpired()) {
+                        evicted.add(eldest);
+                    }
+                    return true;
+                }
+                return false;
+            }
+        };
+        if (directory != null) {
+            try (final Stream<Path> existing = Files.list(directory)) {
+                files.addAll(existing.filter(file -> file.toString().endsWith(SUFFIX))
+                        .sorted(Comparator.comparing(file -> file.toFile().lastModified()))
+                        .collect(Collectors.toList()));
+            } catch (final IOException e) {
+                System.err.println("Can't list cached links in " + directory + ": " + e.getMessage());
+            }
+            deleteAll(trim());
+        }
+    }
+
+    /**
+     * Returns cached links of page.
+     *
+     * @param url URL of the page.
+     * @return links, or {@code null} if page is not cached or expired.
+     */
+    public List<String> get(final String url) {
+        final String key = VisitedUrls.normalize(url);
+        synchronized (this) {
+            final Entry entry = entries.get(key);
+            if (entry != null && entry.isExpired()) {
+                entries.remove(key);
+            }
+            if (entry != null || directory == null) {
+                return count(entry);
+            }
+        }
+        final Entry entry = read(key);
+        final List<Map.Entry<String, Entry>> written;
+        final List<String> links;
+        synchronized (this) {
+            if (entry != null) {
+                entries.putIfAbsent(key, entry);
+            }
+            links = count(entry);
+            written = takeEvicted();
+        }
+        writeAll(written);
+        return links;
+    }
+
+    private List<String> count(final Entry entry) {
+        if (entry == null || entry.isExpired()) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.links;
+    }
+
+    /**
+     * Caches links of page.
+     *
+     * @param url   URL of the page.
+     * @param links extracted links.
+     */
+    public void put(final String url, final List<String> links) {
+        final Entry entry = new Entry(List.copyOf(links), System.currentTimeMillis() + ttl);
+        final List<Map.Entry<String, Entry>> written;
+        synchronized (this) {
+            entries.put(VisitedUrls.normalize(url), entry);
+            written = takeEvicted();
+        }
+        writeAll(written);
+    }
+
+    /**
+     * Returns number of pages found in the cache.
+     *
+     * @return number of hits.
+     */
+    public synchronized long hits() {
+        return hits;
+    }
+
+    /**
+     * Returns number of pages not found in the cache.
+     *
+     * @return number of misses.
+     */
+    public synchronized long misses() {
+        return misses;
+    }
+
+    private List<Map.Entry<String, Entry>> takeEvicted() {
+        if (evicted.isEmpty()) {
+            return List.of();
+        }
+        final List<Map.Entry<String, Entry>> result = new ArrayList<>(evicted);
+        evicted.clear();
+        return result;
+    }
+
+    private List<Path> trim() {
+        final List<Path> deleted = new ArrayList<>();
+        for (final Iterator<Path> i = files.iterator(); files.size() > diskCapacity; ) {
+            deleted.add(i.next());
+            i.remove();
+        }
+        return deleted;
+    }
+
+    private Path file(final String key) {
+        return directory.resolve(Long.toHexString(VisitedUrls.fingerprint(key)) + SUFFIX);
+    }
+
+    private void writeAll(final List<Map.Entry<String, Entry>> written) {
+        for (final Map.Entry<String, Entry> entry : written) {
+            final Path file = file(entry.getKey());
+            if (write(file, entry.getKey(), entry.getValue())) {
+                final List<Path> deleted;
+                synchronized (this) {
+                    files.remove(file);
+                    files.add(file);
+                    deleted = trim();
+                }
+                deleteAll(deleted);
+            }
+        }
+    }
+
+    private void deleteAll(final List<Path> deleted) {
+        for (final Path file : deleted) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (final IOException e) {
+                System.err.println("Can't delete cached links " + file + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // Written to a temporary file and moved, so concurrent readers see a whole file.
+    private boolean write(final Path file, final String key, final Entry entry) {
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(directory, "links", ".tmp");
+            try (final DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeUTF(key);
+                out.writeLong(entry.expires);
+                out.writeInt(entry.links.size());
+                for (final String link : entry.links) {
+                    out.writeUTF(link);
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (final IOException e) {
+            System.err.println("Can't write cached links of " + key + ": " + e.getMessage());
+            if (temp != null) {
+                deleteAll(List.of(temp));
+            }
+            return false;
+        }
+    }
+
+    private Entry read(final String key) {
+        final Path file = file(key);
+        final Entry entry;
+        try (final DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (!in.readUTF().equals(key)) {
+                return null;
+            }
+            final long expires = in.readLong();
+            final int size = in.readInt();
+            final List<String> links = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                links.add(in.readUTF());
+            }
+            entry = new Entry(List.copyOf(links), expires);
+        } catch (final NoSuchFileException e) {
+            return null;
+        } catch (final IOException e) {
+            System.err.println("Can't read cached links of " + key + ": " + e.getMessage());
+            return null;
+        }
+        if (entry.isExpired()) {
+            synchronized (this) {
+                files.remove(file);
+            }
+            deleteAll(List.of(file));
+            return null;
+        }
+        return entry;
+    }
+}
@@ -0,0 +1,51 @@
+package ru.ifmo.rain.ivanova.crawler;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Number of unfinished tasks of a crawl. Used like a single-phase {@code Phaser},
+ * which can't have more than 65535 registered parties.
+ */
+class TaskCounter {
+    private final AtomicLong count;
+
+    TaskCounter(final long parties) {
+        count = new AtomicLong(parties);
+    }
+
+    void register() {
+        count.incrementAndGet();
+    }
+
+    void bulkRegister(final int parties) {
+        count.addAndGet(parties);
+    }
+
+    void arrive() {
+        if (count.decrementAndGet() == 0) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Arrives and waits until all registered tasks arrive.
+     */
+    void arriveAndAwaitAdvance() {
+        arrive();
+        boolean interrupted = false;
+        synchronized (this) {
+            while (count.get() != 0) {
+                try {
+                    wait();
+                } catch (final InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package ru.ifmo.rain.ivanova.crawler;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.PrimitiveIterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Set of URLs already scheduled by a crawl.
+ */
+interface VisitedUrls extends AutoCloseable {
+    /**
+     * Adds URL to the set.
+     *
+     * @param url URL to add.
+     * @return {@code true} if the URL was not in the set.
+     */
+    boolean add(String url);
+
+    @Override
+    default void close() {
+    }
+
+    /**
+     * Exact set of URL strings.
+     */
+    static VisitedUrls exact() {
+        final Set<String> urls = ConcurrentHashMap.newKeySet();
+        return urls::add;
+    }
+
+    /**
+     * Compact set of 64-bit fingerprints of normalised URLs, see {@link Fingerprints}.
+     */
+    static VisitedUrls fingerprints(final long maxInMemory, final int bloomBitsPerUrl, final Path spillDirectory,
+                                    final Consumer<IOException> onSpillError) {
+        return new Fingerprints(maxInMemory, bloomBitsPerUrl, spillDirectory, onSpillError);
+    }
+
+    /**
+     * Normalises URL: lower-case scheme and host, no default port, no fragment, non-empty path.
+     * Authorities which are not server-based, such as hosts with '_', are kept lower-cased as is.
+     * URLs which can not be parsed are returned as is.
+     */
+    static String normalize(final String url) {
+        try {
+            final URI uri = new URI(url);
+            if (uri.isOpaque() || uri.getScheme() == null) {
+                return url;
+            }
+            final String scheme = uri.getScheme().toLowerCase(Locale.ROOT);
+            final int port = uri.getPort() == 80 && scheme.equals("http")
+                    || uri.getPort() == 443 && scheme.equals("https") ? -1 : uri.getPort();
+            final String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+            final String query = uri.getRawQuery() == null ? "" : "?" + uri.getRawQuery();
+            if (uri.getHost() == null) {
+                final String authority = uri.getRawAuthority();
+                return scheme + "://" + (authority == null ? "" : authority.toLowerCase(Locale.ROOT)) + path + query;
+            }
+            return scheme + "://" + (uri.getRawUserInfo() == null ? "" : uri.getRawUserInfo() + "@")
+                    + uri.getHost().toLowerCase(Locale.ROOT) + (port < 0 ? "" : ":" + port) + path + query;
+        } catch (final URISyntaxException e) {
+            return url;
+        }
+    }
+
+    /**
+     * 64-bit fingerprint of a string: FNV-1a over its chars followed by MurmurHash3 finalizer.
+     */
+    static long fingerprint(final String s) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            hash ^= s.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * Fingerprints of normalised URLs in striped open-addressing tables of {@code long}.
+     * <p>
+     * When a stripe holds more than its share of {@code maxInMemory} fingerprints and a spill
+     * directory is set, the stripe is written to disk as a sorted memory-mapped run and cleared.
+     * Runs of similar size are merged, so a stripe has at most {@value #MAX_RUNS} runs in most cases.
+     * Lookups that miss in memory then binary-search the runs of the stripe, unless the optional
+     * Bloom filter of spilled fingerprints says the fingerprint was never spilled. The filter has
+     * {@code bloomBitsPerUrl} bits for each of {@value #BLOOM_SPILLED} times {@code maxInMemory}
+     * spilled URLs, so it gets less precise when more URLs are spilled.
+     * If a stripe can't be spilled, spilling stops, the first error is passed to {@code onSpillError}
+     * and all the following fingerprints are kept in memory.
+     * Distinct URLs with equal fingerprints are treated as one URL.
+     */
+    class Fingerprints implements VisitedUrls {
+        private static final int STRIPES = 64;
+        private static final int INITIAL_CAPACITY = 64;
+        private static final int MAX_RUNS = 8;
+        private static final int WRITE_BUFFER = 1 << 16;
+        private static final int BLOOM_SPILLED = 4;
+
+        private final Stripe[] stripes = new Stripe[STRIPES];
+        private final long stripeLimit;
+        private final Path spillDirectory;
+        private final long[] bloom;
+        private final int bloomHashes;
+        private final Consumer<IOException> onSpillError;
+        private final AtomicBoolean spillFailed = new AtomicBoolean();
+
+        Fingerprints(final long maxInMemory, final int bloomBitsPerUrl, final Path spillDirectory,
+                     final Consumer<IOException> onSpillError) {
+            this.spillDirectory = spillDirectory;
+            this.onSpillError = onSpillError;
+            stripeLimit = spillDirectory == null ? Long.MAX_VALUE : Math.max(INITIAL_CAPACITY, maxInMemory / STRIPES);
+            if (spillDirectory != null && bloomBitsPerUrl > 0) {
+                final long bits = Math.max(64, Math.min(maxInMemory * bloomBitsPerUrl * BLOOM_SPILLED, 1L << 36));
+                bloom = new long[(int) Math.min((bits + 63) / 64, Integer.MAX_VALUE - 8)];
+                bloomHashes = Math.max(1, (int) Math.round(bloomBitsPerUrl * Math.log(2)));
+            } else {
+                bloom = null;
+                bloomHashes = 0;
+            }
+            for (int i = 0; i < STRIPES; i++) {
+                stripes[i] = new Stripe();
+            }
+        }
+
+        @Override
+        public boolean add(final String url) {
+            long fingerprint = fingerprint(normalize(url));
+            if (fingerprint == 0) {
+                fingerprint = 1;
+            }
+            return stripes[(int) (fingerprint >>> 58)].add(fingerprint);
+        }
+
+        private long bloomBit(final long fingerprint, final int i) {
+            return Math.floorMod(fingerprint + i * Long.rotateLeft(fingerprint, 29), (long) bloom.length * 64);
+        }
+
+        private void bloomAdd(final long fingerprint) {
+            for (int i = 0; i < bloomHashes; i++) {
+                final long bit = bloomBit(fingerprint, i);
+                synchronized (bloom) {
+                    bloom[(int) (bit >>> 6)] |= 1L << bit;
+                }
+            }
+        }
+
+        private boolean bloomMayContain(final long fingerprint) {
+            synchronized (bloom) {
+                for (int i = 0; i < bloomHashes; i++) {
+                    final long bit = bloomBit(fingerprint, i);
+                    if ((bloom[(int) (bit >>> 6)] & 1L << bit) == 0) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+
+        private class Stripe {
+            private long[] table = new long[INITIAL_CAPACITY];
+            private int size = 0;
+            private final List<LongBuffer> runs = new ArrayList<>();
+
+            synchronized boolean add(final long fingerprint) {
+                final int index = find(table, fingerprint);
+                if (table[index] == fingerprint || spilled(fingerprint)) {
+                    return false;
+                }
+                table[index] = fingerprint;
+                if (++size * 4 >= table.length * 3) {
+                    resize(table.length * 2);
+                }
+                if (size >= stripeLimit && !spillFailed.get()) {
+                    spill();
+                }
+                return true;
+            }
+
+            private int find(final long[] table, final long fingerprint) {
+                final int mask = table.length - 1;
+                int index = (int) fingerprint & mask;
+                while (table[index] != 0 && table[index] != fingerprint) {
+                    index = (index + 1) & mask;
+                }
+                return index;
+            }
+
+            private void resize(final int capacity) {
+                final long[] resized = new long[capacity];
+                for (final long fingerprint : table) {
+                    if (fingerprint != 0) {
+                        resized[find(resized, fingerprint)] = fingerprint;
+                    }
+                }
+                table = resized;
+            }
+
+            private boolean spilled(final long fingerprint) {
+                if (runs.isEmpty() || bloom != null && !bloomMayContain(fingerprint)) {
+                    return false;
+                }
+                for (final LongBuffer run : runs) {
+                    int low = 0;
+                    int high = run.limit() - 1;
+                    while (low <= high) {
+                        final int middle = (low + high) >>> 1;
+                        final long value = run.get(middle);
+                        if (value == fingerprint) {
+                            return true;
+                        } else if (value < fingerprint) {
+                            low = middle + 1;
+                        } else {
+                            high = middle - 1;
+                        }
+                    }
+                }
+                return false;
+            }
+
+            private void spill() {
+                final long[] sorted = Arrays.stream(table).filter(fingerprint -> fingerprint != 0).sorted().toArray();
+                try {
+                    runs.add(writeRun(sorted.length, Arrays.stream(sorted).iterator()));
+                } catch (final IOException e) {
+                    spillFailed(e);
+                    return;
+                }
+                if (bloom != null) {
+                    for (final long fingerprint : sorted) {
+                        bloomAdd(fingerprint);
+                    }
+                }
+                table = new long[INITIAL_CAPACITY];
+                size = 0;
+                try {
+                    compact();
+                } catch (final IOException e) {
+                    spillFailed(e);
+                }
+            }
+
+            // Merges the newest run into the previous one while it is at least half as large,
+            // or while there are too many runs, so a stripe has a logarithmic number of runs.
+            private void compact() throws IOException {
+                while (runs.size() > 1) {
+                    final LongBuffer last = runs.get(runs.size() - 1);
+                    final LongBuffer previous = runs.get(runs.size() - 2);
+                    final long merged = (long) previous.limit() + last.limit();
+                    if (runs.size() <= MAX_RUNS && last.limit() * 2L < previous.limit()
+                            || merged * Long.BYTES > Integer.MAX_VALUE) {
+                        return;
+                    }
+                    runs.set(runs.size() - 2, writeRun(merged, merge(previous, last)));
+                    runs.remove(runs.size() - 1);
+                }
+            }
+
+            synchronized void close() {
+                runs.clear();
+            }
+        }
+
+        private void spillFailed(final IOException e) {
+            if (spillFailed.compareAndSet(false, true)) {
+                onSpillError.accept(new IOException("Can't spill visited URLs, keeping them in memory: "
+                        + e.getMessage(), e));
+            }
+        }
+
+        private static PrimitiveIterator.OfLong merge(final LongBuffer a, final LongBuffer b) {
+            return new PrimitiveIterator.OfLong() {
+                private int i = 0;
+                private int j = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return i < a.limit() || j < b.limit();
+                }
+
+                @Override
+                public long nextLong() {
+                    if (j == b.limit() || i < a.limit() && a.get(i) < b.get(j)) {
+                        return a.get(i++);
+                    }
+                    return b.get(j++);
+                }
+            };
+        }
+
+        // The run is mapped and its file is deleted right away, so runs hold no file descriptors;
+        // disk space is freed when the mapping is collected.
+        private LongBuffer writeRun(final long size, final PrimitiveIterator.OfLong values) throws IOException {
+            final Path file = Files.createTempFile(spillDirectory, "visited", ".bin");
+            try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE)) {
+                final ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER);
+                while (values.hasNext()) {
+                    buffer.putLong(values.nextLong());
+                    if (!buffer.hasRemaining()) {
+                        write(channel, buffer);
+                    }
+                }
+                write(channel, buffer);
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size * Long.BYTES).asLongBuffer();
+            }
+        }
+
+        private static void write(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() {
+            for (final Stripe stripe : stripes) {
+                stripe.close();
+            }
+        }
+    }
+}
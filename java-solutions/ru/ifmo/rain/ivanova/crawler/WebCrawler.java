@@ -4,9 +4,13 @@ import info.kgeorgiy.java.advanced.crawler.*;
 
 import java.io.IOException;
 import java.net.MalformedURLException;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 /**
  * @author sasha.pff
@@ -16,8 +20,18 @@ import java.util.stream.IntStream;
 public class WebCrawler implements Crawler {
     private final Downloader downloader;
     private final ExecutorService downloaders;
+    private final Semaphore inFlight;
     private final ExecutorService extractors;
-    private final int perHost;
+    private final int minPerHost;
+    private final int maxPerHost;
+    private volatile Function<CrawlListener, VisitedUrls> visited = listener -> VisitedUrls.exact();
+    private volatile Comparator<String> priority = null;
+    private volatile long minDelay = 0;
+    private volatile int maxQueuedPerHost = 0;
+    private volatile Path queueSpillDirectory = null;
+    private volatile LinkCache linkCache = null;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+    private final CrawlMetrics metrics;
     private final static int TIMEOUT = 10000;
 
     /**
@@ -30,115 +44,689 @@ public class WebCrawler implements Crawler {
      * @param perHost     number of downloading pages per one host.
      */
     public WebCrawler(final Downloader downloader, final int downloaders, final int extractors, final int perHost) {
+        this(downloader, downloaders, extractors, perHost, perHost);
+    }
+
+    /**
+     * Constructor with adaptive number of downloading pages per host. Each host starts with
+     * {@code minPerHost} parallel downloads, which grow while the host answers fast and
+     * shrink on errors and slow answers, see {@link AdaptiveLimit}.
+     *
+     * @param downloader  {@code Downloader} to use.
+     * @param downloaders number of downloading pages.
+     * @param extractors  number of processing pages.
+     * @param minPerHost  minimal number of downloading pages per one host.
+     * @param maxPerHost  maximal number of downloading pages per one host.
+     */
+    public WebCrawler(final Downloader downloader, final int downloaders, final int extractors,
+                      final int minPerHost, final int maxPerHost) {
+        this(downloader, Executors.newFixedThreadPool(downloaders), null, downloaders, extractors,
+                minPerHost, maxPerHost);
+    }
+
+    private WebCrawler(final Downloader downloader, final ExecutorService downloaders, final Semaphore inFlight,
+                       final int threads, final int extractors, final int minPerHost, final int maxPerHost) {
         this.downloader = downloader;
-        this.downloaders = Executors.newFixedThreadPool(downloaders);
+        this.downloaders = downloaders;
+        this.inFlight = inFlight;
         this.extractors = Executors.newFixedThreadPool(extractors);
-        this.perHost = perHost;
+        this.minPerHost = minPerHost;
+        this.maxPerHost = maxPerHost;
+        this.metrics = new CrawlMetrics(threads, extractors);
+    }
+
+    /**
+     * Creates {@code WebCrawler}, which runs every download in its own virtual thread.
+     * Number of downloading pages is limited by a semaphore with {@code downloaders} permits
+     * instead of the size of a thread pool, so it may be large. A permit is taken before a download
+     * is submitted, so there are no threads waiting for permits. On Java versions without virtual
+     * threads, a fixed pool of {@code downloaders} platform threads is used instead.
+     *
+     * @param downloader  {@code Downloader} to use.
+     * @param downloaders number of downloading pages.
+     * @param extractors  number of processing pages.
+     * @param perHost     number of downloading pages per one host.
+     * @return new {@code WebCrawler}.
+     */
+    public static WebCrawler withVirtualThreads(final Downloader downloader, final int downloaders,
+                                                final int extractors, final int perHost) {
+        final ExecutorService executor = newVirtualThreadExecutor();
+        if (executor == null) {
+            return new WebCrawler(downloader, Executors.newFixedThreadPool(downloaders), null,
+                    downloaders, extractors, perHost, perHost);
+        }
+        return new WebCrawler(downloader, executor, new Semaphore(downloaders),
+                downloaders, extractors, perHost, perHost);
+    }
+
+    /**
+     * Returns counters of all downloads of this crawler.
+     *
+     * @return crawl metrics.
+     */
+    public CrawlMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Makes following downloads take links of pages found in {@code cache} from it instead of
+     * downloading the pages, and put links of downloaded pages to it. Pages found in the cache are
+     * reported as downloaded and don't count towards limits and delays of their hosts.
+     * The same cache may be used by several crawlers.
+     *
+     * @param cache cache of links, {@code null} to download every page.
+     * @return this crawler.
+     */
+    public WebCrawler cache(final LinkCache cache) {
+        this.linkCache = cache;
+        return this;
+    }
+
+    /**
+     * Makes following downloads keep visited URLs as 64-bit fingerprints of normalised URLs
+     * instead of URL strings. URLs equal after normalisation (case of scheme and host,
+     * default port, fragment, empty path) and URLs with equal fingerprints are downloaded once.
+     * Above {@code maxInMemory} fingerprints, visited URLs are spilled to sorted files in
+     * {@code spillDirectory}, which are looked up only if a Bloom filter allows. The filter has
+     * {@code bloomBitsPerUrl} bits per URL for up to {@code 4 * maxInMemory} spilled URLs.
+     * If visited URLs can't be spilled, they are kept in memory and the error is reported once
+     * for the URI of {@code spillDirectory}. Applies to {@link #download(String, int)}.
+     *
+     * @param maxInMemory     number of fingerprints kept in memory before spilling.
+     * @param bloomBitsPerUrl Bloom filter bits per URL, {@code 0} to look up spilled files on each miss.
+     * @param spillDirectory  directory for spilled files, {@code null} to keep everything in memory.
+     * @return this crawler.
+     */
+    public WebCrawler compactVisited(final long maxInMemory, final int bloomBitsPerUrl, final Path spillDirectory) {
+        visited = listener -> VisitedUrls.fingerprints(maxInMemory, bloomBitsPerUrl, spillDirectory,
+                error -> listener.onError(spillDirectory.toUri().toString(), error));
+        return this;
+    }
+
+    /**
+     * Sets order and pace of following downloads from each host. Pages closer to the start page
+     * are downloaded first, then pages preferred by {@code priority}, then pages in order of discovery.
+     * Downloads from one host start at least {@code minDelayMillis} apart. When
+     * {@code spillDirectory} is set, at most {@code maxQueuedPerHost} pages of each host wait
+     * in memory, the least important of the rest wait in a file in that directory.
+     *
+     * @param priority         order of pages with the same depth, {@code null} for order of discovery.
+     * @param minDelayMillis   minimal delay between downloads from one host.
+     * @param maxQueuedPerHost maximal number of pages of one host waiting in memory.
+     * @param spillDirectory   directory for waiting pages above the limit, {@code null} for no limit.
+     * @return this crawler.
+     */
+    public WebCrawler schedule(final Comparator<String> priority, final long minDelayMillis,
+                               final int maxQueuedPerHost, final Path spillDirectory) {
+        this.priority = priority;
+        this.minDelay = TimeUnit.MILLISECONDS.toNanos(minDelayMillis);
+        this.maxQueuedPerHost = maxQueuedPerHost;
+        this.queueSpillDirectory = spillDirectory;
+        return this;
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (final ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private void submitExtraction(final Runnable task) {
+        extractors.submit(() -> {
+            metrics.extractStarted();
+            final long start = System.nanoTime();
+            try {
+                task.run();
+            } finally {
+                metrics.extractFinished(System.nanoTime() - start);
+            }
+        });
+    }
+
+    private interface DownloadTask {
+        void run() throws IOException;
     }
 
     private class HostDownloader {
-        private final Queue<Runnable> tasks = new ArrayDeque<>();
-        private int readyToRun = perHost;
+        private final WebDownloader crawl;
+        private final CrawlMetrics.Host counters;
+        private final HostQueue tasks = new HostQueue(priority, maxQueuedPerHost, queueSpillDirectory);
+        private final AdaptiveLimit limit = new AdaptiveLimit(minPerHost, maxPerHost);
+        private final long delay = minDelay;
+        private long nextStart = 0;
+        private boolean waiting = false;
+        private boolean starting = false;
+        private boolean closed = false;
+        private int running = 0;
 
-        synchronized private void finish() {
-            readyToRun++;
+        HostDownloader(final WebDownloader crawl, final String host) {
+            this.crawl = crawl;
+            this.counters = metrics.host(host);
         }
 
-        synchronized private void ready() {
-            if (readyToRun != 0) {
-                run();
+        synchronized private void finish(final long nanos, final boolean success) {
+            running--;
+            if (success) {
+                limit.onSuccess(nanos);
+            } else {
+                limit.onError();
             }
         }
 
-        synchronized private void run() {
-            final Runnable task = tasks.poll();
-            if (task != null) {
-                readyToRun--;
-                downloaders.submit(() -> {
-                    try {
-                        task.run();
-                    } catch (final Exception ignored) {
-                    } finally {
-                        finish();
-                        ready();
+        // Host lock is not held while waiting for a permit, so finished downloads of this host
+        // may still release theirs.
+        private void ready() {
+            DownloadTask task;
+            while ((task = next()) != null) {
+                run(task);
+            }
+        }
+
+        // With a delay, at most one submitted download of the host hasn't started yet, and the delay
+        // is counted from the moment it starts, see start(), so queued downloads never start together.
+        synchronized private DownloadTask next() {
+            if (running >= limit.get() || tasks.isEmpty() || waiting || starting) {
+                return null;
+            }
+            if (delay > 0) {
+                final long now = System.nanoTime();
+                if (now < nextStart) {
+                    waiting = true;
+                    timer.schedule(this::wakeLater, nextStart - now, TimeUnit.NANOSECONDS);
+                    return null;
+                }
+                starting = true;
+            }
+            HostQueue.Request request;
+            try {
+                request = tasks.poll();
+            } catch (final HostQueue.SpillException e) {
+                e.lostByDepth.forEach((depth, count) -> metrics.dequeued(counters, depth, count));
+                crawl.lost(e);
+                request = tasks.poll();
+            }
+            if (request == null) {
+                return null;
+            }
+            metrics.dequeued(counters, request.depth, 1);
+            running++;
+            return crawl.task(request.url, request.depth);
+        }
+
+        private void wake() {
+            synchronized (this) {
+                waiting = false;
+            }
+            ready();
+        }
+
+        // Runs on the timer thread, which must not wait for download permits of other hosts.
+        private void wakeLater() {
+            if (inFlight == null) {
+                wake();
+            } else {
+                downloaders.submit(this::wake);
+            }
+        }
+
+        private void start() {
+            if (delay > 0) {
+                synchronized (this) {
+                    starting = false;
+                    nextStart = System.nanoTime() + delay;
+                }
+                ready();
+            }
+        }
+
+        private void run(final DownloadTask task) {
+            if (inFlight != null) {
+                inFlight.acquireUninterruptibly();
+            }
+            downloaders.submit(() -> {
+                start();
+                metrics.downloadStarted(counters);
+                final long start = System.nanoTime();
+                boolean success = false;
+                try {
+                    task.run();
+                    success = true;
+                } catch (final Exception ignored) {
+                } finally {
+                    if (inFlight != null) {
+                        inFlight.release();
                     }
-                });
+                    final long nanos = System.nanoTime() - start;
+                    metrics.downloadFinished(counters, nanos);
+                    finish(nanos, success);
+                    ready();
+                }
+            });
+        }
+
+        void submit(final String url, final int depth) {
+            synchronized (this) {
+                metrics.queued(counters, depth, 1);
+                tasks.add(url, depth);
             }
+            ready();
         }
 
-        synchronized void submit(final Runnable task) {
-            tasks.add(task);
+        void submit(final List<String> urls, final int depth) {
+            synchronized (this) {
+                metrics.queued(counters, depth, urls.size());
+                urls.forEach(url -> tasks.add(url, depth));
+            }
             ready();
         }
+
+        synchronized void close() {
+            tasks.close();
+            if (!closed) {
+                closed = true;
+                metrics.release(counters);
+            }
+        }
     }
 
     private class WebDownloader {
-        private final List<String> downloaded = Collections.synchronizedList(new ArrayList<>());
-        private final ConcurrentMap<String, IOException> errors = new ConcurrentHashMap<>();
-        private final Set<String> addedUrls = ConcurrentHashMap.newKeySet();
+        final List<String> downloaded = Collections.synchronizedList(new ArrayList<>());
+        final ConcurrentMap<String, IOException> errors = new ConcurrentHashMap<>();
+        final CrawlListener listener;
+        final LinkCache cache = linkCache;
+        private final VisitedUrls addedUrls;
         private final ConcurrentMap<String, HostDownloader> addedHosts = new ConcurrentHashMap<>();
-        private Phaser phaser;
-        private ConcurrentLinkedQueue<String> queueToTake = new ConcurrentLinkedQueue<>();
-        private ConcurrentLinkedQueue<String> queueToAdd = new ConcurrentLinkedQueue<>();
+        TaskCounter phaser;
+        private ConcurrentMap<String, List<String>> nextLevel = new ConcurrentHashMap<>();
+        private ConcurrentMap<String, List<String>> nextCached = new ConcurrentHashMap<>();
+        private volatile boolean cancelled = false;
 
-        private String getHost(final String url) {
+        WebDownloader() {
+            listener = metrics.count(new CrawlListener() {
+                @Override
+                public void onDownloaded(final String url) {
+                    downloaded.add(url);
+                }
+
+                @Override
+                public void onError(final String url, final IOException error) {
+                    errors.put(url, error);
+                }
+            });
+            addedUrls = visited.apply(listener);
+        }
+
+        WebDownloader(final CrawlListener listener) {
+            this.listener = metrics.count(listener);
+            addedUrls = visited.apply(this.listener);
+        }
+
+        String getHost(final String url) {
             try {
                 return URLUtils.getHost(url);
             } catch (final MalformedURLException e) {
-                errors.put(url, e);
+                listener.onError(url, e);
                 return null;
             }
         }
 
-        private void download(final String url, final int d) {
-            final String host = getHost(url);
-            if (host == null) {
+        /**
+         * Stops the crawl: queued pages are skipped and no more links are scheduled.
+         */
+        void cancel() {
+            cancelled = true;
+        }
+
+        void enqueue(final Collection<String> links) {
+            if (cancelled) {
                 return;
             }
+            final Map<String, List<String>> hosts = new HashMap<>();
+            for (final String link : links) {
+                if (addedUrls.add(link) && !forward(link)) {
+                    final List<String> cached = cache == null ? null : cache.get(link);
+                    if (cached != null) {
+                        nextCached.put(link, cached);
+                        continue;
+                    }
+                    final String host = getHost(link);
+                    if (host != null) {
+                        hosts.computeIfAbsent(host, unused -> new ArrayList<>()).add(link);
+                    }
+                }
+            }
+            hosts.forEach((host, urls) -> nextLevel.merge(host, urls, (queued, added) -> {
+                queued.addAll(added);
+                return queued;
+            }));
+        }
 
-            phaser.register();
-            addedHosts.computeIfAbsent(host, unused -> new HostDownloader()).submit(() -> {
+        boolean forward(final String link) {
+            return false;
+        }
+
+        void lost(final HostQueue.SpillException e) {
+            for (final HostQueue.Request request : e.requests) {
+                listener.onError(request.url, new IOException(e.getMessage(), e.getCause()));
+            }
+            if (e.unknown > 0) {
+                listener.onError(e.file, new IOException(e.getMessage(), e.getCause()));
+            }
+            for (long i = 0; i < e.lost; i++) {
+                phaser.arrive();
+            }
+        }
+
+        int pending() {
+            return nextLevel.values().stream().mapToInt(List::size).sum() + nextCached.size();
+        }
+
+        List<String> frontier() {
+            return Stream.concat(nextLevel.values().stream().flatMap(List::stream), nextCached.keySet().stream())
+                    .collect(Collectors.toList());
+        }
+
+        void level(final int remaining) {
+            final Map<String, List<String>> hosts = nextLevel;
+            final Map<String, List<String>> cached = nextCached;
+            nextLevel = new ConcurrentHashMap<>();
+            nextCached = new ConcurrentHashMap<>();
+            if (cancelled) {
+                return;
+            }
+            phaser = new TaskCounter(1);
+            cached.forEach((url, links) -> cached(url, links, remaining));
+            hosts.forEach((host, urls) -> {
+                phaser.bulkRegister(urls.size());
+                submit(host, urls, remaining);
+            });
+            phaser.arriveAndAwaitAdvance();
+        }
+
+        // Links of cached pages were looked up by enqueue, on the extractor threads.
+        private void cached(final String url, final List<String> links, final int d) {
+            listener.onDownloaded(url);
+            if (d > 1) {
+                phaser.register();
+                submitExtraction(() -> {
+                    try {
+                        listener.onLinks(url, links);
+                        enqueue(links);
+                    } finally {
+                        phaser.arrive();
+                    }
+                });
+            }
+        }
+
+        void close() {
+            addedUrls.close();
+            closeHosts();
+        }
+
+        DownloadTask task(final String url, final int d) {
+            return () -> {
                 try {
+                    if (cancelled) {
+                        return;
+                    }
                     final Document document = downloader.download(url);
-                    if (d > 1) {
+                    listener.onDownloaded(url);
+                    if (d > 1 || cache != null) {
                         phaser.register();
-                        extractors.submit(() -> {
+                        submitExtraction(() -> {
                             try {
-                                queueToAdd.addAll(document.extractLinks());
+                                final List<String> links = document.extractLinks();
+                                if (cache != null) {
+                                    cache.put(url, links);
+                                }
+                                listener.onLinks(url, links);
+                                if (d > 1) {
+                                    enqueue(links);
+                                }
                             } catch (final IOException e) {
-                                errors.put(url, e);
+                                listener.onError(url, e);
                             } finally {
                                 phaser.arrive();
                             }
                         });
                     }
-                    downloaded.add(url);
                 } catch (final IOException e) {
-                    errors.put(url, e);
+                    listener.onError(url, e);
+                    throw e;
                 } finally {
                     phaser.arrive();
                 }
-            });
+            };
+        }
+
+        void submit(final String host, final String url, final int depth) {
+            addedHosts.computeIfAbsent(host, unused -> new HostDownloader(this, host)).submit(url, depth);
+        }
+
+        private void submit(final String host, final List<String> urls, final int depth) {
+            addedHosts.computeIfAbsent(host, unused -> new HostDownloader(this, host)).submit(urls, depth);
         }
 
-        void swapQueues() {
-            final ConcurrentLinkedQueue<String> tmp = queueToAdd;
-            queueToAdd = queueToTake;
-            queueToTake = tmp;
+        void closeHosts() {
+            addedHosts.values().forEach(HostDownloader::close);
         }
 
         Result run(final String url, final int depth) {
-            queueToAdd.add(url);
-            IntStream.range(0, depth).forEachOrdered(d -> {
-                swapQueues();
-                phaser = new Phaser();
+            return run(url, depth, null);
+        }
+
+        Result run(final String url, final int depth, final CrawlCheckpoint checkpoint) {
+            enqueue(List.of(url));
+            return crawl(0, depth, checkpoint);
+        }
+
+        Result run(final CrawlCheckpoint checkpoint) {
+            downloaded.addAll(checkpoint.downloaded);
+            errors.putAll(checkpoint.errors);
+            checkpoint.downloaded.forEach(addedUrls::add);
+            checkpoint.errors.keySet().forEach(addedUrls::add);
+            enqueue(checkpoint.frontier);
+            return crawl(checkpoint.level + 1, checkpoint.depth, checkpoint);
+        }
+
+        private Result crawl(final int level, final int depth, final CrawlCheckpoint checkpoint) {
+            try {
+                IntStream.range(level, depth).forEachOrdered(d -> {
+                    level(depth - d);
+                    if (checkpoint != null) {
+                        checkpoint.write(d, downloaded, errors, frontier());
+                    }
+                });
+            } finally {
+                close();
+            }
+            return new Result(downloaded, errors);
+        }
+    }
+
+    /**
+     * Level-by-level crawl of hosts of one partition, driven by {@link CrawlWorker}.
+     * Links to hosts of other partitions are collected instead of being downloaded,
+     * each of them once per crawl.
+     */
+    class PartitionDownloader extends WebDownloader {
+        private final int index;
+        private final int partitions;
+        private final List<String> foreign = Collections.synchronizedList(new ArrayList<>());
+
+        private PartitionDownloader(final int index, final int partitions) {
+            this.index = index;
+            this.partitions = partitions;
+        }
+
+        @Override
+        boolean forward(final String link) {
+            try {
+                if (CrawlWorker.partition(URLUtils.getHost(link), partitions) != index) {
+                    foreign.add(link);
+                    return true;
+                }
+            } catch (final MalformedURLException ignored) {
+            }
+            return false;
+        }
+
+        /**
+         * Downloads {@code urls} and pages left from the previous level with {@code remaining} depth.
+         *
+         * @return extracted links to other partitions.
+         */
+        List<String> level(final Collection<String> urls, final int remaining) {
+            enqueue(urls);
+            level(remaining);
+            final List<String> result = new ArrayList<>(foreign);
+            foreign.clear();
+            return result;
+        }
+
+        List<String> takeDownloaded() {
+            final List<String> result = new ArrayList<>(downloaded);
+            downloaded.clear();
+            return result;
+        }
+
+        Map<String, IOException> takeErrors() {
+            final Map<String, IOException> result = new HashMap<>(errors);
+            errors.clear();
+            return result;
+        }
+    }
+
+    /**
+     * Creates crawl of hosts of one partition of {@code partitions}.
+     */
+    PartitionDownloader partition(final int index, final int partitions) {
+        return new PartitionDownloader(index, partitions);
+    }
+
+    private class PipelinedDownloader extends WebDownloader {
+        private final ConcurrentMap<String, Page> pages = new ConcurrentHashMap<>();
+
+        private class Page {
+            private int depth = 0;
+            private boolean ready = false;
+            private boolean reported = false;
+            private List<String> links;
+        }
+
+        private void visit(final String url, final int depth) {
+            final Page page = pages.computeIfAbsent(url, unused -> new Page());
+            final int previous;
+            final boolean ready;
+            synchronized (page) {
+                if (depth <= page.depth) {
+                    return;
+                }
+                previous = page.depth;
+                page.depth = depth;
+                ready = page.ready;
+            }
+            if (ready) {
+                expand(url, page, depth);
+            } else if (previous == 0) {
+                download(url, depth);
+            }
+        }
+
+        private void download(final String url, final int depth) {
+            final String host = getHost(url);
+            if (host == null) {
+                return;
+            }
+
+            final List<String> links = cache == null ? null : cache.get(url);
+            if (links != null) {
+                listener.onDownloaded(url);
+                ready(url, pages.get(url), links);
+                return;
+            }
+
+            phaser.register();
+            submit(host, url, depth);
+        }
+
+        // Links are extracted right after download, even for pages at the last depth,
+        // so no document is kept until the page is reached again by a shorter path.
+        @Override
+        DownloadTask task(final String url, final int unused) {
+            final Page page = pages.get(url);
+            return () -> {
+                try {
+                    final Document document = downloader.download(url);
+                    listener.onDownloaded(url);
+                    phaser.register();
+                    submitExtraction(() -> {
+                        try {
+                            final List<String> links = document.extractLinks();
+                            if (cache != null) {
+                                cache.put(url, links);
+                            }
+                            ready(url, page, links);
+                        } catch (final IOException e) {
+                            listener.onError(url, e);
+                        } finally {
+                            phaser.arrive();
+                        }
+                    });
+                } catch (final IOException e) {
+                    listener.onError(url, e);
+                    throw e;
+                } finally {
+                    phaser.arrive();
+                }
+            };
+        }
+
+        private void ready(final String url, final Page page, final List<String> links) {
+            final int depth;
+            synchronized (page) {
+                page.links = links;
+                page.ready = true;
+                depth = page.depth;
+            }
+            expand(url, page, depth);
+        }
+
+        private void expand(final String url, final Page page, final int depth) {
+            final List<String> links;
+            final boolean report;
+            synchronized (page) {
+                links = page.links;
+                report = !page.reported && (depth > 1 || cache != null);
+                page.reported |= report;
+            }
+            if (report) {
+                listener.onLinks(url, links);
+            }
+            if (depth > 1) {
                 phaser.register();
-                queueToTake.stream()
-                        .filter(addedUrls::add)
-                        .forEach(url1 -> download(url1, depth - d));
-                queueToTake.clear();
+                submitExtraction(() -> {
+                    try {
+                        links.forEach(link -> visit(link, depth - 1));
+                    } finally {
+                        phaser.arrive();
+                    }
+                });
+            }
+        }
+
+        @Override
+        Result run(final String url, final int depth) {
+            phaser = new TaskCounter(1);
+            try {
+                visit(url, depth);
                 phaser.arriveAndAwaitAdvance();
-            });
+            } finally {
+                closeHosts();
+            }
             return new Result(downloaded, errors);
         }
     }
@@ -148,8 +736,164 @@ public class WebCrawler implements Crawler {
         return new WebDownloader().run(url, depth);
     }
 
+    /**
+     * Downloads web site up to specified depth like {@link #download(String, int)}, appending
+     * state of the crawl to {@code checkpoint} after each depth level, so it can be continued
+     * by {@link #resume(Path)} if the process dies.
+     *
+     * @param url        start URL.
+     * @param depth      download depth.
+     * @param checkpoint checkpoint file, replaced if exists.
+     * @return download result.
+     * @throws IOException if checkpoint file can't be created.
+     */
+    public Result download(final String url, final int depth, final Path checkpoint) throws IOException {
+        try (final CrawlCheckpoint log = CrawlCheckpoint.create(checkpoint, url, depth)) {
+            return new WebDownloader().run(url, depth, log);
+        }
+    }
+
+    /**
+     * Continues crawl started by {@link #download(String, int, Path)} from the last depth level
+     * written to {@code checkpoint}. Pages of the interrupted level are downloaded again.
+     * Errors restored from the checkpoint keep only their messages.
+     *
+     * @param checkpoint checkpoint file.
+     * @return download result of the whole crawl.
+     * @throws IOException if checkpoint file can't be read.
+     */
+    public Result resume(final Path checkpoint) throws IOException {
+        try (final CrawlCheckpoint log = CrawlCheckpoint.open(checkpoint)) {
+            return new WebDownloader().run(log);
+        }
+    }
+
+    /**
+     * Downloads web site up to specified depth like {@link #download(String, int)}, passing
+     * downloaded pages, extracted links and errors to {@code listener} as they occur
+     * instead of collecting them. Returns when the crawl is finished.
+     *
+     * @param url      start URL.
+     * @param depth    download depth.
+     * @param listener receiver of crawl progress.
+     */
+    public void download(final String url, final int depth, final CrawlListener listener) {
+        new WebDownloader(listener).run(url, depth);
+    }
+
+    /**
+     * Returns publisher, which runs a new crawl like {@link #download(String, int, CrawlListener)}
+     * for each subscriber and publishes its events. At most {@code buffer} events are buffered
+     * for the subscriber, after that crawler threads wait for it to request more.
+     * The publisher completes when the crawl is finished. Cancelling the subscription stops the crawl,
+     * so does an exception thrown by {@code onNext} of the subscriber, which is then passed to its {@code onError}.
+     *
+     * @param url    start URL.
+     * @param depth  download depth.
+     * @param buffer maximal number of buffered events.
+     * @return publisher of crawl events.
+     */
+    public Flow.Publisher<CrawlEvent> publish(final String url, final int depth, final int buffer) {
+        return subscriber -> {
+            final SubmissionPublisher<CrawlEvent> publisher =
+                    new SubmissionPublisher<>(ForkJoinPool.commonPool(), buffer);
+            final WebDownloader crawl = new WebDownloader(new CrawlListener() {
+                @Override
+                public void onDownloaded(final String url) {
+                    publisher.submit(new CrawlEvent(CrawlEvent.Type.DOWNLOADED, url, null, null));
+                }
+
+                @Override
+                public void onLinks(final String url, final List<String> links) {
+                    publisher.submit(new CrawlEvent(CrawlEvent.Type.LINKS, url, links, null));
+                }
+
+                @Override
+                public void onError(final String url, final IOException error) {
+                    publisher.submit(new CrawlEvent(CrawlEvent.Type.ERROR, url, null, error));
+                }
+            });
+            publisher.subscribe(new Flow.Subscriber<>() {
+                private Flow.Subscription upstream;
+                private boolean failed = false;
+
+                @Override
+                public void onSubscribe(final Flow.Subscription subscription) {
+                    upstream = subscription;
+                    subscriber.onSubscribe(new Flow.Subscription() {
+                        @Override
+                        public void request(final long n) {
+                            subscription.request(n);
+                        }
+
+                        @Override
+                        public void cancel() {
+                            crawl.cancel();
+                            subscription.cancel();
+                        }
+                    });
+                }
+
+                @Override
+                public void onNext(final CrawlEvent event) {
+                    if (failed) {
+                        return;
+                    }
+                    try {
+                        subscriber.onNext(event);
+                    } catch (final RuntimeException e) {
+                        failed = true;
+                        crawl.cancel();
+                        upstream.cancel();
+                        subscriber.onError(e);
+                    }
+                }
+
+                @Override
+                public void onError(final Throwable error) {
+                    if (!failed) {
+                        subscriber.onError(error);
+                    }
+                }
+
+                @Override
+                public void onComplete() {
+                    if (!failed) {
+                        subscriber.onComplete();
+                    }
+                }
+            });
+            final Thread thread = new Thread(() -> {
+                try {
+                    crawl.run(url, depth);
+                    publisher.close();
+                } catch (final RuntimeException e) {
+                    publisher.closeExceptionally(e);
+                }
+            }, "crawl-publisher");
+            thread.setDaemon(true);
+            thread.start();
+        };
+    }
+
+    /**
+     * Downloads web site up to specified depth without waiting for each depth level to finish.
+     * Links are scheduled as soon as they are extracted, a page reached again by a shorter path
+     * has its links scheduled again with the larger remaining depth, so the result is the same
+     * as of {@link #download(String, int)}.
+     *
+     * @param url   start URL.
+     * @param depth download depth.
+     * @return download result.
+     */
+    public Result downloadPipelined(final String url, final int depth) {
+        return new PipelinedDownloader().run(url, depth);
+    }
+
     @Override
     public void close() {
+        metrics.close();
+        timer.shutdownNow();
         extractors.shutdown();
         downloaders.shutdown();
         try {
@@ -166,6 +910,7 @@ public class WebCrawler implements Crawler {
 
     /**
      * Main function to run using command line.
+     * Set {@code -Dcrawler.progress=<seconds>} to print {@link CrawlMetrics#report()} to stderr periodically.
      *
      * @param args arguments to create {@code WebCrawler}.
      */
@@ -175,9 +920,16 @@ public class WebCrawler implements Crawler {
             return;
         }
         final int depth = parseArgument(args, 1);
-        try (final Crawler crawler = new WebCrawler(new CachingDownloader(), depth,
+        final long progress = Long.getLong("crawler.progress", 0);
+        try (final WebCrawler crawler = new WebCrawler(new CachingDownloader(), depth,
                 parseArgument(args, 2), parseArgument(args, 3))) {
+            if (progress > 0) {
+                crawler.metrics().startReporting(progress);
+            }
             crawler.download(args[0], depth);
+            if (progress > 0) {
+                System.err.println(crawler.metrics().report());
+            }
         } catch (final IOException e) {
             System.err.println("Can't initialize CachingDownloader");
         }
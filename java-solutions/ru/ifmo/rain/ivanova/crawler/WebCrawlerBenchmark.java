@@ -0,0 +1,93 @@
+package ru.ifmo.rain.ivanova.crawler;
+
+import info.kgeorgiy.java.advanced.crawler.Crawler;
+import info.kgeorgiy.java.advanced.crawler.Document;
+import info.kgeorgiy.java.advanced.crawler.Downloader;
+import info.kgeorgiy.java.advanced.crawler.Result;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * Local benchmark of {@code WebCrawler} on a synthetic site with injected download latency.
+ * <p>
+ * Usage: {@code WebCrawlerBenchmark [pages [hosts [latencyMillis [downloaders [perHost]]]]]}.
+ * Runs the crawl with a fixed thread pool and with virtual threads using the same limits
+ * and prints crawl time, pages per second and peak number of live threads.
+ */
+public class WebCrawlerBenchmark {
+    private static final int LINKS = 8;
+    private static final int DEPTH = 5;
+
+    private static class LatencyDownloader implements Downloader {
+        private final int pages;
+        private final int hosts;
+        private final long latency;
+
+        LatencyDownloader(final int pages, final int hosts, final long latency) {
+            this.pages = pages;
+            this.hosts = hosts;
+            this.latency = latency;
+        }
+
+        String url(final int page) {
+            return "http://host" + page % hosts + ".example/page" + page;
+        }
+
+        @Override
+        public Document download(final String url) throws IOException {
+            try {
+                Thread.sleep(latency);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted", e);
+            }
+            final Random random = new Random(url.hashCode());
+            final List<String> links = new ArrayList<>();
+            for (int i = 0; i < LINKS; i++) {
+                links.add(url(random.nextInt(pages)));
+            }
+            return () -> links;
+        }
+    }
+
+    private static void run(final String name, final LatencyDownloader downloader,
+                            final Function<Downloader, WebCrawler> factory) {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        final long start = System.nanoTime();
+        final Result result;
+        try (final Crawler crawler = factory.apply(downloader)) {
+            result = crawler.download(downloader.url(0), DEPTH);
+        }
+        final double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-8s %6d pages in %6.2f s, %8.1f pages/s, peak %d threads%n", name,
+                result.getDownloaded().size(), seconds, result.getDownloaded().size() / seconds,
+                threads.getPeakThreadCount());
+    }
+
+    private static int parseArgument(final String[] args, final int index, final int defaultValue) {
+        return args.length <= index ? defaultValue : Integer.parseInt(args[index]);
+    }
+
+    /**
+     * Runs benchmark.
+     *
+     * @param args optional number of pages, hosts, latency in milliseconds, downloaders and pages per host.
+     */
+    public static void main(final String[] args) {
+        final int pages = parseArgument(args, 0, 20000);
+        final int hosts = parseArgument(args, 1, 100);
+        final int latency = parseArgument(args, 2, 50);
+        final int downloaders = parseArgument(args, 3, 1000);
+        final int perHost = parseArgument(args, 4, 20);
+        final LatencyDownloader downloader = new LatencyDownloader(pages, hosts, latency);
+        run("platform", downloader, d -> new WebCrawler(d, downloaders, 4, perHost));
+        run("virtual", downloader, d -> WebCrawler.withVirtualThreads(d, downloaders, 4, perHost));
+    }
+}
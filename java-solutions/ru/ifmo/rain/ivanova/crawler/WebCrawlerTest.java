@@ -0,0 +1,142 @@
+package ru.ifmo.rain.ivanova.crawler;
+
+import info.kgeorgiy.java.advanced.crawler.Result;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+
+public class WebCrawlerTest {
+    private static final int DEPTH = 6;
+    private static final int LARGE_PAGES = 30000;
+    private static final int LARGE_DEPTH = 9;
+    private static final FakeDownloader downloader = new FakeDownloader();
+    private static final FakeDownloader largeDownloader = new FakeDownloader(LARGE_PAGES);
+    private static Path directory;
+
+    @BeforeClass
+    public static void beforeClass() throws IOException {
+        directory = Files.createTempDirectory("crawler-test");
+    }
+
+    @AfterClass
+    public static void afterClass() throws IOException {
+        try (final Stream<Path> files = Files.list(directory)) {
+            for (final Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    private static void checkExpected(final FakeDownloader downloader, final Result result,
+                                      final String url, final int depth) {
+        final FakeDownloader.Expected expected = downloader.expected(url, depth);
+        assertEquals(expected.downloaded, new HashSet<>(result.getDownloaded()));
+        assertEquals(expected.downloaded.size(), result.getDownloaded().size());
+        assertEquals(expected.errors, result.getErrors().keySet());
+    }
+
+    private static void checkSame(final Result expected, final Result actual) {
+        assertEquals(new HashSet<>(expected.getDownloaded()), new HashSet<>(actual.getDownloaded()));
+        assertEquals(expected.getErrors().keySet(), actual.getErrors().keySet());
+    }
+
+    private static Result download(final FakeDownloader downloader, final Function<WebCrawler, Result> crawl) {
+        try (final WebCrawler crawler = new WebCrawler(downloader, 16, 4, 2)) {
+            return crawl.apply(crawler);
+        }
+    }
+
+    @Test
+    public void test00_download() {
+        for (int page = 1; page <= 3; page++) {
+            final String url = FakeDownloader.url(page);
+            checkExpected(downloader, download(downloader, c -> c.download(url, DEPTH)), url, DEPTH);
+        }
+    }
+
+    @Test
+    public void test01_pipelined() {
+        for (int depth = 1; depth <= DEPTH; depth++) {
+            final String url = FakeDownloader.url(depth);
+            final int d = depth;
+            final Result plain = download(downloader, c -> c.download(url, d));
+            final Result pipelined = download(downloader, c -> c.downloadPipelined(url, d));
+            checkExpected(downloader, pipelined, url, d);
+            checkSame(plain, pipelined);
+        }
+    }
+
+    @Test
+    public void test02_compactVisited() {
+        final String url = FakeDownloader.url(1);
+        final Result plain = download(largeDownloader, c -> c.download(url, LARGE_DEPTH));
+        checkExpected(largeDownloader, plain, url, LARGE_DEPTH);
+        for (final int bloomBits : new int[]{0, 10}) {
+            final Result compact = download(largeDownloader,
+                    c -> c.compactVisited(100, bloomBits, directory).download(url, LARGE_DEPTH));
+            checkSame(plain, compact);
+        }
+        final Result inMemory = download(largeDownloader,
+                c -> c.compactVisited(100, 0, null).download(url, LARGE_DEPTH));
+        checkSame(plain, inMemory);
+    }
+
+    @Test
+    public void test03_checkpoint() throws IOException {
+        final String url = FakeDownloader.url(1);
+        final Path checkpoint = directory.resolve("crawl.log");
+        final Result full = download(downloader, c -> {
+            try {
+                return c.download(url, DEPTH, checkpoint);
+            } catch (final IOException e) {
+                throw new AssertionError(e);
+            }
+        });
+        checkExpected(downloader, full, url, DEPTH);
+        checkSame(download(downloader, c -> c.download(url, DEPTH)), full);
+
+        final List<String> lines = Files.readAllLines(checkpoint, StandardCharsets.UTF_8);
+        for (int levels = 0; levels <= DEPTH; levels++) {
+            final List<String> cut = new ArrayList<>();
+            int committed = 0;
+            for (final String line : lines) {
+                if (committed == levels) {
+                    break;
+                }
+                cut.add(line);
+                if (line.startsWith("level ")) {
+                    committed++;
+                }
+            }
+            if (cut.isEmpty()) {
+                cut.add(lines.get(0));
+            }
+            // Torn writes of an interrupted level.
+            cut.add("downloaded http://torn.com/");
+            cut.add("frontier " + FakeDownloader.url(2));
+            Files.write(checkpoint, cut, StandardCharsets.UTF_8);
+            final Result resumed = download(downloader, c -> {
+                try {
+                    return c.resume(checkpoint);
+                } catch (final IOException e) {
+                    throw new AssertionError(e);
+                }
+            });
+            checkExpected(downloader, resumed, url, DEPTH);
+            checkSame(full, resumed);
+        }
+    }
+}
@@ -10,149 +10,189 @@ import java.nio.ByteBuffer;
 import java.nio.channels.DatagramChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
+import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class HelloUDPNonblockingServer implements HelloServer {
-    private Selector selector;
-    private DatagramChannel datagramChannel;
-    private int bufferSize;
-    private ExecutorService executorService;
+    private final int shards;
+    private final List<Shard> shardList = new ArrayList<>();
     private ExecutorService worker;
-    private SelectionKey key;
+    private final AtomicLong dropped = new AtomicLong();
     private byte[] HELLO = HelloUDPUtills.getBytes("Hello, ");
+    private static final int BATCH = 32;
+    private static final int MAX_DATAGRAM = 65507;
 
-    private class PairBuffer {
-        ByteBuffer data;
-        SocketAddress socketAddress;
-
-        PairBuffer(final ByteBuffer data, final SocketAddress socketAddress) {
-            this.data = data;
-            this.socketAddress = socketAddress;
-        }
+    public HelloUDPNonblockingServer() {
+        this(1);
     }
 
-    private final ConcurrentLinkedQueue<PairBuffer> empty = new ConcurrentLinkedQueue<>();
-    private final ConcurrentLinkedQueue<PairBuffer> fill = new ConcurrentLinkedQueue<>();
-
-    private void fillEmpty(final int threads) {
-        for (int i = 0; i < threads; i++) {
-            ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
-            buffer.put(HELLO);
-            empty.add(new PairBuffer(buffer, new InetSocketAddress(0)));
-        }
+    // Opens shards channels on the same port with SO_REUSEPORT, each with its own selector thread,
+    // so the kernel spreads datagrams between them. Falls back to one channel without SO_REUSEPORT.
+    public HelloUDPNonblockingServer(final int shards) {
+        this.shards = shards;
     }
 
-    private PairBuffer getEmpty() {
-        synchronized (empty) {
-            PairBuffer buffer = empty.remove();
-            if (empty.isEmpty()) {
-                HelloUDPUtills.changeInterestFromRead(key, selector);
+    private class Shard {
+        private final Selector selector;
+        private final DatagramChannel datagramChannel;
+        private final SelectionKey key;
+        private final ByteBuffer[] ring;
+        private final SocketAddress[] addresses;
+        private int head = 0;
+        private int size = 0;
+
+        Shard(final int port, final boolean reusePort, final int threads) throws IOException {
+            selector = Selector.open();
+            datagramChannel = DatagramChannel.open();
+            datagramChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            if (reusePort) {
+                datagramChannel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
             }
-            return buffer;
+            datagramChannel.configureBlocking(false);
+            datagramChannel.bind(new InetSocketAddress(port));
+            key = datagramChannel.register(selector, SelectionKey.OP_READ);
+            final int bufferSize = Math.min(datagramChannel.socket().getReceiveBufferSize(), MAX_DATAGRAM);
+            ring = new ByteBuffer[Math.max(threads, BATCH)];
+            addresses = new SocketAddress[ring.length];
+            fillRing(bufferSize);
         }
-    }
 
-    private PairBuffer getFill() {
-        synchronized (fill) {
-            PairBuffer buffer = fill.remove();
-            if (fill.isEmpty()) {
-                HelloUDPUtills.changeInterestFromWrite(key, selector);
+        // Slots are slices of one direct buffer, so the channel doesn't copy them, and start with HELLO,
+        // which is never overwritten: requests are received right after it and the whole slot is sent.
+        private void fillRing(final int bufferSize) {
+            final int slotSize = bufferSize + HELLO.length;
+            final ByteBuffer memory = ByteBuffer.allocateDirect(slotSize * ring.length);
+            for (int i = 0; i < ring.length; i++) {
+                memory.limit(slotSize * (i + 1)).position(slotSize * i);
+                ring[i] = memory.slice().put(HELLO);
             }
-            return buffer;
         }
-    }
 
-    private void readServer() throws IOException {
-        final PairBuffer buffer = getEmpty();
-        SocketAddress socketAddress = datagramChannel.receive(buffer.data);
-        buffer.data.flip();
-        buffer.socketAddress = socketAddress;
-        synchronized (fill) {
-            if (fill.size() == 0) {
-                HelloUDPUtills.changeInterestToWrite(key, selector);
+        // Receives all queued datagrams while there are free slots.
+        private void readServer() throws IOException {
+            while (size < ring.length) {
+                final int tail = (head + size) % ring.length;
+                final SocketAddress socketAddress = datagramChannel.receive(ring[tail]);
+                if (socketAddress == null) {
+                    return;
+                }
+                ring[tail].flip();
+                addresses[tail] = socketAddress;
+                size++;
             }
-            fill.add(buffer);
         }
-    }
 
-    private void writeServer() throws IOException {
-        final PairBuffer buffer = getFill();
-        datagramChannel.send(buffer.data, buffer.socketAddress);
-        buffer.data.clear();
-        executorService.submit(() -> {
-            buffer.data.put(HELLO);
-            synchronized (empty) {
-                if (empty.isEmpty()) {
-                    HelloUDPUtills.changeInterestToRead(key, selector);
+        // Sends responses until the ring is empty or the socket buffer is full.
+        // A response that can't be sent, such as one longer than a datagram, is dropped and counted.
+        private void writeServer() {
+            while (size > 0) {
+                final ByteBuffer buffer = ring[head];
+                try {
+                    if (datagramChannel.send(buffer, addresses[head]) == 0) {
+                        return;
+                    }
+                } catch (final IOException e) {
+                    dropped.incrementAndGet();
                 }
-                empty.add(buffer);
+                buffer.clear().position(HELLO.length);
+                addresses[head] = null;
+                head = (head + 1) % ring.length;
+                size--;
             }
-        });
-    }
+        }
 
-    private void run() {
-        while (!Thread.interrupted() && !datagramChannel.socket().isClosed() && selector.isOpen()) {
-            try {
-                selector.select();
-                for (final Iterator<SelectionKey> i = selector.selectedKeys().iterator(); i.hasNext(); ) {
-                    key = i.next();
-                    try {
-                        if (key.isReadable()) {
-                            readServer();
-                        }
-                        if (key.isWritable()) {
+        // Interest ops are changed by the selecting thread only, so no wakeup is needed.
+        private void updateInterest() {
+            key.interestOps((size < ring.length ? SelectionKey.OP_READ : 0)
+                    | (size > 0 ? SelectionKey.OP_WRITE : 0));
+        }
+
+        private void run() {
+            while (!Thread.interrupted() && !datagramChannel.socket().isClosed() && selector.isOpen()) {
+                try {
+                    selector.select();
+                    for (final Iterator<SelectionKey> i = selector.selectedKeys().iterator(); i.hasNext(); ) {
+                        final SelectionKey selected = i.next();
+                        try {
+                            if (selected.isReadable()) {
+                                readServer();
+                            }
                             writeServer();
+                            updateInterest();
+                        } finally {
+                            i.remove();
                         }
-                    } finally {
-                        i.remove();
                     }
+                } catch (IOException e) {
+                    System.out.println("Can't select");
+                    return;
                 }
-            } catch (IOException e) {
-                System.out.println("Can't select");
-                return;
             }
         }
+
+        private void close() throws IOException {
+            try {
+                selector.close();
+            } finally {
+                datagramChannel.close();
+            }
+        }
+    }
+
+    private static boolean reusePortSupported() {
+        try (final DatagramChannel channel = DatagramChannel.open()) {
+            return channel.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+        } catch (final IOException e) {
+            return false;
+        }
+    }
+
+    // Number of responses dropped because they couldn't be sent.
+    long dropped() {
+        return dropped.get();
     }
 
     @Override
     public void start(final int port, final int threads) {
-        executorService = Executors.newFixedThreadPool(threads);
-        worker = Executors.newSingleThreadExecutor();
+        final boolean reusePort = shards > 1;
         try {
-            selector = Selector.open();
-            datagramChannel = DatagramChannel.open();
-            datagramChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
-            datagramChannel.configureBlocking(false);
-            datagramChannel.bind(new InetSocketAddress(port));
-            bufferSize = datagramChannel.socket().getReceiveBufferSize();
-            datagramChannel.register(selector, SelectionKey.OP_READ);
-            fillEmpty(threads);
-            worker.submit(this::run);
+            if (reusePort && !reusePortSupported()) {
+                System.out.println("SO_REUSEPORT is not supported, using one channel");
+                shardList.add(new Shard(port, false, threads));
+            } else {
+                for (int i = 0; i < Math.max(1, shards); i++) {
+                    shardList.add(new Shard(port, reusePort, threads));
+                }
+            }
+            worker = Executors.newFixedThreadPool(shardList.size());
+            for (final Shard shard : shardList) {
+                worker.submit(shard::run);
+            }
         } catch (IOException e) {
             System.out.println("Can't open channel " + e);
         }
     }
 
+    // Closes every shard even if some of them fail.
     @Override
     public void close() {
-        try {
-            if (selector != null) {
-                selector.close();
-            }
-            if (datagramChannel != null) {
-                datagramChannel.close();
+        for (final Shard shard : shardList) {
+            try {
+                shard.close();
+            } catch (final IOException e) {
+                System.out.println("Can't close " + e);
             }
+        }
+        if (worker != null) {
             HelloUDPUtills.closeExecutorService(worker);
-            HelloUDPUtills.closeExecutorService(executorService);
-        } catch (IOException e) {
-            System.out.println("Can't close " + e);
         }
     }
 
     public static void main(final String[] args) {
-        HelloUDPUtills.mainServer(args, new HelloUDPNonblockingServer());
+        HelloUDPUtills.mainServer(args, new HelloUDPNonblockingServer(Integer.getInteger("hello.shards", 1)));
     }
-}
\ No newline at end of file
+}
@@ -13,16 +13,21 @@ public class HelloUDPServer implements HelloServer {
     private DatagramSocket datagramSocket;
     private ExecutorService executorService;
     private int bufferSize;
+    private final byte[] HELLO = HelloUDPUtills.getBytes("Hello, ");
 
+    // The response starts with HELLO and the request is received right after it,
+    // so UTF-8 bytes are answered verbatim without decoding or allocation.
     private void task() {
-        final DatagramPacket packet = HelloUDPUtills.newDatagramPacket(bufferSize);
-        final byte[] request = new byte[bufferSize];
+        final byte[] response = new byte[HELLO.length + bufferSize];
+        System.arraycopy(HELLO, 0, response, 0, HELLO.length);
+        final DatagramPacket packet = new DatagramPacket(response, HELLO.length, bufferSize);
         while (!datagramSocket.isClosed()) {
             try {
-                final String message = HelloUDPUtills.receive(datagramSocket, packet, request);
-                final byte[] response = HelloUDPUtills.getBytes("Hello, " + message);
+                packet.setData(response, HELLO.length, bufferSize);
+                datagramSocket.receive(packet);
+                packet.setData(response, 0, HELLO.length + packet.getLength());
                 try {
-                    HelloUDPUtills.send(datagramSocket, packet, response);
+                    datagramSocket.send(packet);
                 } catch (final IOException e) {
                     System.out.println("Cant't send DatagramPacket " + e.getMessage());
                 }
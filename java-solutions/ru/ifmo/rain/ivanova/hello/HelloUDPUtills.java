@@ -6,8 +6,6 @@ import info.kgeorgiy.java.advanced.hello.HelloServer;
 import java.io.IOException;
 import java.net.*;
 import java.nio.ByteBuffer;
-import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Objects;
@@ -16,10 +14,6 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 
 class HelloUDPUtills {
-    static DatagramPacket newDatagramPacket(final int bufferSize) {
-        return new DatagramPacket(new byte[bufferSize], bufferSize);
-    }
-
     static DatagramPacket newDatagramPacket(final byte[] response, final String host, final int port) throws UnknownHostException {
         return new DatagramPacket(response, response.length,
                 new InetSocketAddress(InetAddress.getByName(host), port));
@@ -55,26 +49,6 @@ class HelloUDPUtills {
         }
     }
 
-    static void changeInterestToRead(final SelectionKey key, final Selector selector) {
-        key.interestOpsOr(SelectionKey.OP_READ);
-        selector.wakeup();
-    }
-
-    static void changeInterestToWrite(final SelectionKey key, final Selector selector) {
-        key.interestOpsOr(SelectionKey.OP_WRITE);
-        selector.wakeup();
-    }
-
-    static void changeInterestFromRead(final SelectionKey key, final Selector selector) {
-        key.interestOpsAnd(~SelectionKey.OP_READ);
-        selector.wakeup();
-    }
-
-    static void changeInterestFromWrite(final SelectionKey key, final Selector selector) {
-        key.interestOpsAnd(~SelectionKey.OP_WRITE);
-        selector.wakeup();
-    }
-
     static boolean checkArguments(String[] args, int length) {
         if (args == null || args.length != length || Arrays.stream(args).anyMatch(Objects::isNull)) {
             System.out.println("Incorrect arguments");
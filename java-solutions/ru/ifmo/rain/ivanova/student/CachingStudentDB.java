@@ -0,0 +1,265 @@
+package ru.ifmo.rain.ivanova.student;
+
+import info.kgeorgiy.java.advanced.student.AdvancedStudentGroupQuery;
+import info.kgeorgiy.java.advanced.student.Group;
+import info.kgeorgiy.java.advanced.student.Student;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Result cache around another {@code AdvancedStudentGroupQuery}.
+ * <p>
+ * Results of queries over a whole collection are cached by query, collection identity, parameters
+ * and roster version, and evicted in least-recently-used order above {@code capacity} entries.
+ * The version comes from the supplier given to the constructor (for example
+ * {@link IndexedStudentDB#version()}), otherwise from {@link #invalidate()}, which must be called
+ * after changing any queried collection. Cached lists and maps are shared between callers
+ * and unmodifiable. Queries over {@code List} projections and indices are not cached.
+ */
+public class CachingStudentDB implements AdvancedStudentGroupQuery {
+    private final AdvancedStudentGroupQuery db;
+    private final LongSupplier version;
+    private final AtomicLong invalidations = new AtomicLong();
+    private final Map<Key, Object> cache;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    private static class Key {
+        final String query;
+        final Collection<Student> students;
+        final String parameter;
+        final long version;
+        final long invalidation;
+
+        Key(final String query, final Collection<Student> students, final String parameter,
+            final long version, final long invalidation) {
+            this.query = query;
+            this.students = students;
+            this.parameter = parameter;
+            this.version = version;
+            this.invalidation = invalidation;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return query.equals(key.query) && students == key.students
+                    && Objects.equals(parameter, key.parameter)
+                    && version == key.version && invalidation == key.invalidation;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(query, System.identityHashCode(students), parameter, version, invalidation);
+        }
+    }
+
+    /**
+     * Creates cache, which is invalidated only by {@link #invalidate()}.
+     *
+     * @param db       queries to cache.
+     * @param capacity maximal number of cached results.
+     */
+    public CachingStudentDB(final AdvancedStudentGroupQuery db, final int capacity) {
+        this(db, capacity, () -> 0);
+    }
+
+    /**
+     * Creates cache, which is also invalidated whenever {@code version} changes.
+     *
+     * @param db       queries to cache.
+     * @param capacity maximal number of cached results.
+     * @param version  roster version.
+     */
+    public CachingStudentDB(final AdvancedStudentGroupQuery db, final int capacity, final LongSupplier version) {
+        this.db = db;
+        this.version = version;
+        cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Key, Object> eldest) {
+                if (size() > capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Drops all cached results.
+     */
+    public synchronized void invalidate() {
+        invalidations.incrementAndGet();
+        cache.clear();
+    }
+
+    /**
+     * Returns number of queries answered from the cache.
+     *
+     * @return number of hits.
+     */
+    public synchronized long hits() {
+        return hits;
+    }
+
+    /**
+     * Returns number of queries passed to the underlying database.
+     *
+     * @return number of misses.
+     */
+    public synchronized long misses() {
+        return misses;
+    }
+
+    /**
+     * Returns number of results evicted because of capacity.
+     *
+     * @return number of evictions.
+     */
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T cached(final String query, final Collection<Student> students, final String parameter,
+                         final Supplier<T> supplier) {
+        final Key key = new Key(query, students, parameter, version.getAsLong(), invalidations.get());
+        synchronized (this) {
+            final Object result = cache.get(key);
+            if (result != null) {
+                hits++;
+                return (T) result;
+            }
+            misses++;
+        }
+        final T result = supplier.get();
+        synchronized (this) {
+            cache.put(key, result);
+        }
+        return result;
+    }
+
+    private List<Student> cachedStudents(final String query, final Collection<Student> students,
+                                         final String parameter, final Supplier<List<Student>> supplier) {
+        return cached(query, students, parameter, () -> Collections.unmodifiableList(supplier.get()));
+    }
+
+    @Override
+    public List<Group> getGroupsByName(final Collection<Student> students) {
+        return cached("getGroupsByName", students, null,
+                () -> Collections.unmodifiableList(db.getGroupsByName(students)));
+    }
+
+    @Override
+    public List<Group> getGroupsById(final Collection<Student> students) {
+        return cached("getGroupsById", students, null,
+                () -> Collections.unmodifiableList(db.getGroupsById(students)));
+    }
+
+    @Override
+    public String getLargestGroup(final Collection<Student> students) {
+        return cached("getLargestGroup", students, null, () -> db.getLargestGroup(students));
+    }
+
+    @Override
+    public String getLargestGroupFirstName(final Collection<Student> students) {
+        return cached("getLargestGroupFirstName", students, null, () -> db.getLargestGroupFirstName(students));
+    }
+
+    @Override
+    public String getMostPopularName(final Collection<Student> students) {
+        return cached("getMostPopularName", students, null, () -> db.getMostPopularName(students));
+    }
+
+    @Override
+    public List<Student> sortStudentsById(final Collection<Student> students) {
+        return cachedStudents("sortStudentsById", students, null, () -> db.sortStudentsById(students));
+    }
+
+    @Override
+    public List<Student> sortStudentsByName(final Collection<Student> students) {
+        return cachedStudents("sortStudentsByName", students, null, () -> db.sortStudentsByName(students));
+    }
+
+    @Override
+    public List<Student> findStudentsByFirstName(final Collection<Student> students, final String name) {
+        return cachedStudents("findStudentsByFirstName", students, name,
+                () -> db.findStudentsByFirstName(students, name));
+    }
+
+    @Override
+    public List<Student> findStudentsByLastName(final Collection<Student> students, final String name) {
+        return cachedStudents("findStudentsByLastName", students, name,
+                () -> db.findStudentsByLastName(students, name));
+    }
+
+    @Override
+    public List<Student> findStudentsByGroup(final Collection<Student> students, final String group) {
+        return cachedStudents("findStudentsByGroup", students, group,
+                () -> db.findStudentsByGroup(students, group));
+    }
+
+    @Override
+    public Map<String, String> findStudentNamesByGroup(final Collection<Student> students, final String group) {
+        return cached("findStudentNamesByGroup", students, group,
+                () -> Collections.unmodifiableMap(db.findStudentNamesByGroup(students, group)));
+    }
+
+    @Override
+    public List<String> getFirstNames(final List<Student> students) {
+        return db.getFirstNames(students);
+    }
+
+    @Override
+    public List<String> getLastNames(final List<Student> students) {
+        return db.getLastNames(students);
+    }
+
+    @Override
+    public List<String> getGroups(final List<Student> students) {
+        return db.getGroups(students);
+    }
+
+    @Override
+    public List<String> getFullNames(final List<Student> students) {
+        return db.getFullNames(students);
+    }
+
+    @Override
+    public Set<String> getDistinctFirstNames(final List<Student> students) {
+        return db.getDistinctFirstNames(students);
+    }
+
+    @Override
+    public String getMinStudentFirstName(final List<Student> students) {
+        return db.getMinStudentFirstName(students);
+    }
+
+    @Override
+    public List<String> getFirstNames(final Collection<Student> students, final int[] indices) {
+        return db.getFirstNames(students, indices);
+    }
+
+    @Override
+    public List<String> getLastNames(final Collection<Student> students, final int[] indices) {
+        return db.getLastNames(students, indices);
+    }
+
+    @Override
+    public List<String> getGroups(final Collection<Student> students, final int[] indices) {
+        return db.getGroups(students, indices);
+    }
+
+    @Override
+    public List<String> getFullNames(final Collection<Student> students, final int[] indices) {
+        return db.getFullNames(students, indices);
+    }
+}
@@ -0,0 +1,356 @@
+package ru.ifmo.rain.ivanova.student;
+
+import info.kgeorgiy.java.advanced.student.Group;
+import info.kgeorgiy.java.advanced.student.Student;
+
+import java.util.*;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * {@code StudentDB} over a columnar copy of a fixed roster.
+ * <p>
+ * Ids are stored in an {@code int} array, first names, last names, groups and full names
+ * are dictionary-encoded into {@code int} code arrays, so each distinct string is kept once and
+ * scans touch only compact arrays. The collection passed to the constructor is not kept.
+ * Queries on {@link #roster()} run over the columns, queries on any other collection
+ * fall back to {@code StudentDB}. Students of the roster are built from the columns on first use
+ * and then reused, they share strings of the dictionaries.
+ */
+public class ColumnarStudentDB extends StudentDB {
+    private static class Column {
+        private final List<String> values = new ArrayList<>();
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final int[] rows;
+        private int[] ranks;
+
+        Column(final int size) {
+            rows = new int[size];
+        }
+
+        int encode(final String value) {
+            return codes.computeIfAbsent(value, unused -> {
+                values.add(value);
+                return values.size() - 1;
+            });
+        }
+
+        void set(final int row, final String value) {
+            rows[row] = encode(value);
+        }
+
+        void rank() {
+            final Integer[] order = IntStream.range(0, values.size()).boxed().toArray(Integer[]::new);
+            Arrays.sort(order, Comparator.comparing(values::get));
+            ranks = new int[values.size()];
+            for (int i = 0; i < order.length; i++) {
+                ranks[order[i]] = i;
+            }
+        }
+
+        int code(final String value) {
+            return codes.getOrDefault(value, -1);
+        }
+
+        String get(final int row) {
+            return values.get(rows[row]);
+        }
+
+        int rank(final int row) {
+            return ranks[rows[row]];
+        }
+    }
+
+    private final int size;
+    private final Student[] built;
+    private final int[] ids;
+    private final Column firstNames;
+    private final Column lastNames;
+    private final Column groups;
+    private final Column fullNames;
+    private final Comparator<Integer> rowsById;
+    private final Comparator<Integer> rowsByName;
+
+    private final List<Student> roster = new Roster();
+
+    private class Roster extends AbstractList<Student> implements RandomAccess {
+        @Override
+        public Student get(final int row) {
+            Objects.checkIndex(row, size);
+            return student(row);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Builds columns for {@code roster}.
+     *
+     * @param roster students to store, the collection itself is not kept.
+     */
+    public ColumnarStudentDB(final Collection<Student> roster) {
+        size = roster.size();
+        built = new Student[size];
+        ids = new int[size];
+        firstNames = new Column(size);
+        lastNames = new Column(size);
+        groups = new Column(size);
+        fullNames = new Column(size);
+        final Map<Long, Integer> fullNameCodes = new HashMap<>();
+        int row = 0;
+        for (final Student student : roster) {
+            ids[row] = student.getId();
+            firstNames.set(row, student.getFirstName());
+            lastNames.set(row, student.getLastName());
+            groups.set(row, student.getGroup());
+            final long pair = (long) firstNames.rows[row] << 32 | lastNames.rows[row];
+            fullNames.rows[row] = fullNameCodes.computeIfAbsent(pair,
+                    unused -> fullNames.encode(getFullName(student)));
+            row++;
+        }
+        firstNames.rank();
+        lastNames.rank();
+        groups.rank();
+        fullNames.rank();
+        rowsById = Comparator.<Integer>comparingInt(i -> ids[i]).thenComparingInt(i -> i);
+        rowsByName = Comparator.<Integer>comparingInt(lastNames::rank)
+                .thenComparingInt(firstNames::rank)
+                .thenComparingInt(i -> ids[i])
+                .thenComparingInt(i -> i);
+    }
+
+    /**
+     * Returns unmodifiable view of the stored students in the order of the constructor argument.
+     *
+     * @return students, queries on which run over the columns.
+     */
+    public List<Student> roster() {
+        return roster;
+    }
+
+    private boolean columnar(final Collection<Student> students) {
+        return students == roster;
+    }
+
+    private Student student(final int row) {
+        if (built[row] == null) {
+            built[row] = new Student(ids[row], firstNames.get(row), lastNames.get(row), groups.get(row));
+        }
+        return built[row];
+    }
+
+    private List<Student> students(final IntStream rows, final Comparator<Integer> order) {
+        return rows.boxed().sorted(order).map(this::student).collect(Collectors.toList());
+    }
+
+    private IntStream rows() {
+        return IntStream.range(0, size);
+    }
+
+    private IntStream rowsWith(final Column column, final String value) {
+        final int code = column.code(value);
+        return code < 0 ? IntStream.empty() : rows().filter(row -> column.rows[row] == code);
+    }
+
+    private List<String> values(final IntStream rows, final IntFunction<String> value) {
+        return rows.mapToObj(value).collect(Collectors.toList());
+    }
+
+    @Override
+    public List<String> getFirstNames(final List<Student> students) {
+        return columnar(students) ? values(rows(), firstNames::get) : super.getFirstNames(students);
+    }
+
+    @Override
+    public List<String> getLastNames(final List<Student> students) {
+        return columnar(students) ? values(rows(), lastNames::get) : super.getLastNames(students);
+    }
+
+    @Override
+    public List<String> getGroups(final List<Student> students) {
+        return columnar(students) ? values(rows(), groups::get) : super.getGroups(students);
+    }
+
+    @Override
+    public List<String> getFullNames(final List<Student> students) {
+        return columnar(students) ? values(rows(), fullNames::get) : super.getFullNames(students);
+    }
+
+    @Override
+    public Set<String> getDistinctFirstNames(final List<Student> students) {
+        if (!columnar(students)) {
+            return super.getDistinctFirstNames(students);
+        }
+        final boolean[] seen = new boolean[firstNames.values.size()];
+        for (final int code : firstNames.rows) {
+            seen[code] = true;
+        }
+        return IntStream.range(0, seen.length).filter(code -> seen[code])
+                .mapToObj(firstNames.values::get)
+                .collect(Collectors.toCollection(TreeSet::new));
+    }
+
+    @Override
+    public String getMinStudentFirstName(final List<Student> students) {
+        if (!columnar(students)) {
+            return super.getMinStudentFirstName(students);
+        }
+        int min = -1;
+        for (int row = 0; row < size; row++) {
+            if (min < 0 || ids[row] < ids[min]) {
+                min = row;
+            }
+        }
+        return min < 0 ? "" : firstNames.get(min);
+    }
+
+    @Override
+    public List<Student> sortStudentsById(final Collection<Student> students) {
+        return columnar(students) ? students(rows(), rowsById) : super.sortStudentsById(students);
+    }
+
+    @Override
+    public List<Student> sortStudentsByName(final Collection<Student> students) {
+        return columnar(students) ? students(rows(), rowsByName) : super.sortStudentsByName(students);
+    }
+
+    @Override
+    public List<Student> findStudentsByFirstName(final Collection<Student> students, final String name) {
+        return columnar(students)
+                ? students(rowsWith(firstNames, name), rowsByName)
+                : super.findStudentsByFirstName(students, name);
+    }
+
+    @Override
+    public List<Student> findStudentsByLastName(final Collection<Student> students, final String name) {
+        return columnar(students)
+                ? students(rowsWith(lastNames, name), rowsByName)
+                : super.findStudentsByLastName(students, name);
+    }
+
+    @Override
+    public List<Student> findStudentsByGroup(final Collection<Student> students, final String group) {
+        return columnar(students)
+                ? students(rowsWith(groups, group), rowsByName)
+                : super.findStudentsByGroup(students, group);
+    }
+
+    @Override
+    public Map<String, String> findStudentNamesByGroup(final Collection<Student> students, final String group) {
+        if (!columnar(students)) {
+            return super.findStudentNamesByGroup(students, group);
+        }
+        final Map<Integer, Integer> minFirstName = new HashMap<>();
+        rowsWith(groups, group).forEach(row -> minFirstName.merge(lastNames.rows[row], row,
+                (a, b) -> firstNames.rank(a) <= firstNames.rank(b) ? a : b));
+        return minFirstName.entrySet().stream().collect(Collectors.toMap(
+                entry -> lastNames.values.get(entry.getKey()),
+                entry -> firstNames.get(entry.getValue())));
+    }
+
+    private List<Group> getGroupsBy(final Comparator<Integer> order) {
+        final Map<Integer, List<Integer>> byGroup = new HashMap<>();
+        rows().forEach(row -> byGroup.computeIfAbsent(groups.rows[row], unused -> new ArrayList<>()).add(row));
+        return byGroup.entrySet().stream()
+                .sorted(Comparator.comparingInt(entry -> groups.ranks[entry.getKey()]))
+                .map(entry -> new Group(groups.values.get(entry.getKey()),
+                        students(entry.getValue().stream().mapToInt(Integer::intValue), order)))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<Group> getGroupsByName(final Collection<Student> students) {
+        return columnar(students) ? getGroupsBy(rowsByName) : super.getGroupsByName(students);
+    }
+
+    @Override
+    public List<Group> getGroupsById(final Collection<Student> students) {
+        return columnar(students) ? getGroupsBy(rowsById) : super.getGroupsById(students);
+    }
+
+    /**
+     * Counts distinct values of {@code values} column per code of {@code keys} column.
+     */
+    private int[] countDistinct(final Column keys, final Column values) {
+        final long[] pairs = new long[size];
+        for (int row = 0; row < size; row++) {
+            pairs[row] = (long) keys.rows[row] << 32 | values.rows[row];
+        }
+        Arrays.sort(pairs);
+        final int[] counts = new int[keys.values.size()];
+        for (int i = 0; i < size; i++) {
+            if (i == 0 || pairs[i] != pairs[i - 1]) {
+                counts[(int) (pairs[i] >>> 32)]++;
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Returns value of {@code keys} column with the largest count, ties broken by rank.
+     */
+    private static String argMax(final Column keys, final int[] counts, final boolean preferLargest) {
+        int best = -1;
+        for (int code = 0; code < counts.length; code++) {
+            if (best < 0 || counts[code] > counts[best] || counts[code] == counts[best]
+                    && (keys.ranks[code] > keys.ranks[best]) == preferLargest) {
+                best = code;
+            }
+        }
+        return best < 0 ? "" : keys.values.get(best);
+    }
+
+    @Override
+    public String getLargestGroup(final Collection<Student> students) {
+        if (!columnar(students)) {
+            return super.getLargestGroup(students);
+        }
+        final int[] counts = new int[groups.values.size()];
+        for (final int code : groups.rows) {
+            counts[code]++;
+        }
+        return argMax(groups, counts, false);
+    }
+
+    @Override
+    public String getLargestGroupFirstName(final Collection<Student> students) {
+        return columnar(students)
+                ? argMax(groups, countDistinct(groups, firstNames), false)
+                : super.getLargestGroupFirstName(students);
+    }
+
+    @Override
+    public String getMostPopularName(final Collection<Student> students) {
+        return columnar(students)
+                ? argMax(fullNames, countDistinct(fullNames, groups), true)
+                : super.getMostPopularName(students);
+    }
+
+    private List<String> getByIndices(final int[] indices, final Column column) {
+        return Arrays.stream(indices).mapToObj(column::get).collect(Collectors.toList());
+    }
+
+    @Override
+    public List<String> getFirstNames(final Collection<Student> students, final int[] indices) {
+        return columnar(students) ? getByIndices(indices, firstNames) : super.getFirstNames(students, indices);
+    }
+
+    @Override
+    public List<String> getLastNames(final Collection<Student> students, final int[] indices) {
+        return columnar(students) ? getByIndices(indices, lastNames) : super.getLastNames(students, indices);
+    }
+
+    @Override
+    public List<String> getGroups(final Collection<Student> students, final int[] indices) {
+        return columnar(students) ? getByIndices(indices, groups) : super.getGroups(students, indices);
+    }
+
+    @Override
+    public List<String> getFullNames(final Collection<Student> students, final int[] indices) {
+        return columnar(students) ? getByIndices(indices, fullNames) : super.getFullNames(students, indices);
+    }
+}
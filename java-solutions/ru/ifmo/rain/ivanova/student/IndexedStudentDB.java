@@ -0,0 +1,334 @@
+package ru.ifmo.rain.ivanova.student;
+
+import info.kgeorgiy.java.advanced.student.Group;
+import info.kgeorgiy.java.advanced.student.Student;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * {@code StudentDB} with indexes over its own mutable roster.
+ * <p>
+ * Students are added, removed and moved between groups through this object, and every index,
+ * sorted order and aggregate counter is updated incrementally. Queries on {@link #roster()} are
+ * answered from the indexes, queries on any other collection, including the one passed to the
+ * constructor, fall back to {@code StudentDB}.
+ * This class is not thread-safe.
+ */
+public class IndexedStudentDB extends StudentDB {
+    private static final Comparator<Entry> ENTRY_BY_ID =
+            Comparator.comparing(Entry::getStudent, COMPARATOR_BY_ID).thenComparingLong(Entry::getSeq);
+    private static final Comparator<Entry> ENTRY_BY_NAME =
+            Comparator.comparing(Entry::getStudent, COMPARATOR_BY_NAME).thenComparingLong(Entry::getSeq);
+
+    private static class Entry {
+        final Student student;
+        final long seq;
+
+        Entry(final Student student, final long seq) {
+            this.student = student;
+            this.seq = seq;
+        }
+
+        Student getStudent() {
+            return student;
+        }
+
+        long getSeq() {
+            return seq;
+        }
+    }
+
+    private static class Ranking {
+        private final Map<String, Map<String, Integer>> values = new HashMap<>();
+        private final Map<String, Integer> totals = new HashMap<>();
+        private final boolean distinct;
+        private final TreeSet<String> order;
+
+        Ranking(final boolean distinct, final Comparator<String> tieBreak) {
+            this.distinct = distinct;
+            order = new TreeSet<>(Comparator.comparingInt(this::weight).reversed().thenComparing(tieBreak));
+        }
+
+        private int weight(final String key) {
+            return distinct ? values.get(key).size() : totals.get(key);
+        }
+
+        void add(final String key, final String value) {
+            if (values.containsKey(key)) {
+                order.remove(key);
+            }
+            values.computeIfAbsent(key, unused -> new HashMap<>()).merge(value, 1, Integer::sum);
+            totals.merge(key, 1, Integer::sum);
+            order.add(key);
+        }
+
+        void remove(final String key, final String value) {
+            order.remove(key);
+            final Map<String, Integer> keyValues = values.get(key);
+            keyValues.computeIfPresent(value, (unused, count) -> count == 1 ? null : count - 1);
+            if (totals.computeIfPresent(key, (unused, count) -> count == 1 ? null : count - 1) == null) {
+                values.remove(key);
+            } else {
+                order.add(key);
+            }
+        }
+
+        String top() {
+            return order.isEmpty() ? "" : order.first();
+        }
+    }
+
+    private long version = 0;
+    private long seq = 0;
+    private final Map<Student, Deque<Entry>> entries = new IdentityHashMap<>();
+    private final Set<Entry> inOrder = new LinkedHashSet<>();
+    private StudentView view = null;
+    private final TreeSet<Entry> byId = new TreeSet<>(ENTRY_BY_ID);
+    private final TreeSet<Entry> byName = new TreeSet<>(ENTRY_BY_NAME);
+    private final Map<String, TreeSet<Entry>> byFirstName = new HashMap<>();
+    private final Map<String, TreeSet<Entry>> byLastName = new HashMap<>();
+    private final TreeMap<String, TreeSet<Entry>> byGroup = new TreeMap<>();
+    private final TreeMap<String, TreeSet<Entry>> byGroupId = new TreeMap<>();
+    private final Ranking groupSizes = new Ranking(false, Comparator.naturalOrder());
+    private final Ranking groupFirstNames = new Ranking(true, Comparator.naturalOrder());
+    private final Ranking nameGroups = new Ranking(true, Comparator.reverseOrder());
+
+    private final Collection<Student> roster = new AbstractCollection<>() {
+        @Override
+        public Iterator<Student> iterator() {
+            final Iterator<Entry> iterator = inOrder.iterator();
+            return new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public Student next() {
+                    return iterator.next().student;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return inOrder.size();
+        }
+    };
+
+    /**
+     * Creates database with empty roster.
+     */
+    public IndexedStudentDB() {
+        this(Collections.emptyList());
+    }
+
+    /**
+     * Creates database with the given initial roster.
+     *
+     * @param roster initial students, the collection itself is not changed or tracked.
+     */
+    public IndexedStudentDB(final Collection<Student> roster) {
+        roster.forEach(this::add);
+        version = 0;
+    }
+
+    /**
+     * Returns live unmodifiable view of the roster in insertion order.
+     *
+     * @return current students.
+     */
+    public Collection<Student> roster() {
+        return roster;
+    }
+
+    /**
+     * Returns number of changes of the roster since construction.
+     *
+     * @return roster version.
+     */
+    public long version() {
+        return version;
+    }
+
+    /**
+     * Adds student to the end of the roster. The same student object may be added several times,
+     * each occurrence is a separate entry, as in a list.
+     *
+     * @param student student to add.
+     */
+    public void add(final Student student) {
+        insert(student);
+        version++;
+    }
+
+    /**
+     * Removes the first occurrence of student from the roster.
+     *
+     * @param student student object previously added.
+     * @return {@code true} if the student was in the roster.
+     */
+    public boolean remove(final Student student) {
+        final Deque<Entry> occurrences = entries.get(student);
+        if (occurrences == null) {
+            return false;
+        }
+        final Entry entry = occurrences.removeFirst();
+        if (occurrences.isEmpty()) {
+            entries.remove(student);
+        }
+        inOrder.remove(entry);
+        view = null;
+        byId.remove(entry);
+        byName.remove(entry);
+        removeFrom(byFirstName, student.getFirstName(), entry);
+        removeFrom(byLastName, student.getLastName(), entry);
+        removeFrom(byGroup, student.getGroup(), entry);
+        removeFrom(byGroupId, student.getGroup(), entry);
+        groupSizes.remove(student.getGroup(), student.getFirstName());
+        groupFirstNames.remove(student.getGroup(), student.getFirstName());
+        nameGroups.remove(getFullName(student), student.getGroup());
+        version++;
+        return true;
+    }
+
+    /**
+     * Moves the first occurrence of student to another group. {@code Student} is immutable,
+     * so the student is replaced by a new object at the end of the roster.
+     *
+     * @param student student object in the roster.
+     * @param group   new group.
+     * @return student object that replaced {@code student}.
+     * @throws NoSuchElementException if the student is not in the roster.
+     */
+    public Student changeGroup(final Student student, final String group) {
+        if (!remove(student)) {
+            throw new NoSuchElementException("Student is not in roster: " + student);
+        }
+        final Student moved = new Student(student.getId(), student.getFirstName(), student.getLastName(), group);
+        insert(moved);
+        return moved;
+    }
+
+    private void insert(final Student student) {
+        final Entry entry = new Entry(student, seq++);
+        entries.computeIfAbsent(student, unused -> new ArrayDeque<>()).addLast(entry);
+        inOrder.add(entry);
+        view = null;
+        byId.add(entry);
+        byName.add(entry);
+        addTo(byFirstName, student.getFirstName(), entry, ENTRY_BY_NAME);
+        addTo(byLastName, student.getLastName(), entry, ENTRY_BY_NAME);
+        addTo(byGroup, student.getGroup(), entry, ENTRY_BY_NAME);
+        addTo(byGroupId, student.getGroup(), entry, ENTRY_BY_ID);
+        groupSizes.add(student.getGroup(), student.getFirstName());
+        groupFirstNames.add(student.getGroup(), student.getFirstName());
+        nameGroups.add(getFullName(student), student.getGroup());
+    }
+
+    private static void addTo(final Map<String, TreeSet<Entry>> index, final String key, final Entry entry,
+                              final Comparator<Entry> comparator) {
+        index.computeIfAbsent(key, unused -> new TreeSet<>(comparator)).add(entry);
+    }
+
+    private static void removeFrom(final Map<String, TreeSet<Entry>> index, final String key, final Entry entry) {
+        final TreeSet<Entry> set = index.get(key);
+        set.remove(entry);
+        if (set.isEmpty()) {
+            index.remove(key);
+        }
+    }
+
+    private boolean indexed(final Collection<Student> students) {
+        return students == roster;
+    }
+
+    private static List<Student> students(final Collection<Entry> entries) {
+        return entries.stream().map(Entry::getStudent).collect(Collectors.toList());
+    }
+
+    private static List<Student> find(final Map<String, TreeSet<Entry>> index, final String key) {
+        return students(index.getOrDefault(key, new TreeSet<>()));
+    }
+
+    private static List<Group> groups(final Map<String, TreeSet<Entry>> index) {
+        return index.entrySet().stream()
+                .map(entry -> new Group(entry.getKey(), students(entry.getValue())))
+                .collect(Collectors.toList());
+    }
+
+    private <T> T query(final Collection<Student> students, final Supplier<T> fromIndex,
+                        final Function<Collection<Student>, T> fallback) {
+        return indexed(students) ? fromIndex.get() : fallback.apply(students);
+    }
+
+    @Override
+    public List<Group> getGroupsByName(final Collection<Student> students) {
+        return query(students, () -> groups(byGroup), super::getGroupsByName);
+    }
+
+    @Override
+    public List<Group> getGroupsById(final Collection<Student> students) {
+        return query(students, () -> groups(byGroupId), super::getGroupsById);
+    }
+
+    @Override
+    public String getLargestGroup(final Collection<Student> students) {
+        return query(students, groupSizes::top, super::getLargestGroup);
+    }
+
+    @Override
+    public String getLargestGroupFirstName(final Collection<Student> students) {
+        return query(students, groupFirstNames::top, super::getLargestGroupFirstName);
+    }
+
+    @Override
+    public List<Student> sortStudentsById(final Collection<Student> students) {
+        return query(students, () -> students(byId), super::sortStudentsById);
+    }
+
+    @Override
+    public List<Student> sortStudentsByName(final Collection<Student> students) {
+        return query(students, () -> students(byName), super::sortStudentsByName);
+    }
+
+    @Override
+    public List<Student> findStudentsByFirstName(final Collection<Student> students, final String name) {
+        return query(students, () -> find(byFirstName, name), c -> super.findStudentsByFirstName(c, name));
+    }
+
+    @Override
+    public List<Student> findStudentsByLastName(final Collection<Student> students, final String name) {
+        return query(students, () -> find(byLastName, name), c -> super.findStudentsByLastName(c, name));
+    }
+
+    @Override
+    public List<Student> findStudentsByGroup(final Collection<Student> students, final String group) {
+        return query(students, () -> find(byGroup, group), c -> super.findStudentsByGroup(c, group));
+    }
+
+    @Override
+    public Map<String, String> findStudentNamesByGroup(final Collection<Student> students, final String group) {
+        return query(students, () -> super.findStudentNamesByGroup(find(byGroup, group), group),
+                c -> super.findStudentNamesByGroup(c, group));
+    }
+
+    @Override
+    public String getMostPopularName(final Collection<Student> students) {
+        return query(students, nameGroups::top, super::getMostPopularName);
+    }
+
+    @Override
+    public StudentView view(final Collection<Student> students) {
+        if (!indexed(students)) {
+            return super.view(students);
+        }
+        if (view == null) {
+            view = new StudentView(roster);
+        }
+        return view;
+    }
+}
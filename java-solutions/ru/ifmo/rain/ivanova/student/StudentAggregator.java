@@ -0,0 +1,159 @@
+package ru.ifmo.rain.ivanova.student;
+
+import info.kgeorgiy.java.advanced.student.Student;
+
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * One-pass aggregation of students for rosters that are not held in memory.
+ * <p>
+ * Students are consumed one by one and only exact hash counters are kept: group sizes,
+ * distinct first names per group, distinct groups per full name and the student with the minimal id,
+ * so memory depends on the number of distinct names and groups, not on the number of students.
+ * Results match {@code StudentDB} queries on the same students. This class is not thread-safe.
+ */
+public class StudentAggregator implements Consumer<Student> {
+    private static final Comparator<Map.Entry<String, Integer>> BY_COUNT_THEN_MIN_KEY =
+            Map.Entry.<String, Integer>comparingByValue().reversed()
+                    .thenComparing(Map.Entry.comparingByKey());
+    private static final Comparator<Map.Entry<String, Integer>> BY_COUNT_THEN_MAX_KEY =
+            Map.Entry.<String, Integer>comparingByValue().reversed()
+                    .thenComparing(Map.Entry.comparingByKey(Comparator.reverseOrder()));
+
+    private final Map<String, Integer> groupSizes = new HashMap<>();
+    private final Map<String, Set<String>> groupFirstNames = new HashMap<>();
+    private final Map<String, Set<String>> nameGroups = new HashMap<>();
+    private Student minStudent = null;
+
+    /**
+     * Aggregates students of the given stream.
+     *
+     * @param students students to consume.
+     * @return aggregator of all consumed students.
+     */
+    public static StudentAggregator of(final Stream<Student> students) {
+        final StudentAggregator aggregator = new StudentAggregator();
+        students.sequential().forEachOrdered(aggregator);
+        return aggregator;
+    }
+
+    /**
+     * Aggregates remaining students of the given iterator.
+     *
+     * @param students students to consume.
+     * @return aggregator of all consumed students.
+     */
+    public static StudentAggregator of(final Iterator<Student> students) {
+        final StudentAggregator aggregator = new StudentAggregator();
+        students.forEachRemaining(aggregator);
+        return aggregator;
+    }
+
+    @Override
+    public void accept(final Student student) {
+        groupSizes.merge(student.getGroup(), 1, Integer::sum);
+        groupFirstNames.computeIfAbsent(student.getGroup(), unused -> new HashSet<>()).add(student.getFirstName());
+        nameGroups.computeIfAbsent(StudentDB.getFullName(student), unused -> new HashSet<>()).add(student.getGroup());
+        if (minStudent == null || student.getId() < minStudent.getId()) {
+            minStudent = student;
+        }
+    }
+
+    private static Map<String, Integer> sizes(final Map<String, Set<String>> sets) {
+        return sets.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().size()));
+    }
+
+    private static List<String> top(final Map<String, Integer> counts, final int k,
+                                    final Comparator<Map.Entry<String, Integer>> order) {
+        if (k <= 0) {
+            return List.of();
+        }
+        final PriorityQueue<Map.Entry<String, Integer>> queue = new PriorityQueue<>(order.reversed());
+        for (final Map.Entry<String, Integer> entry : counts.entrySet()) {
+            queue.add(entry);
+            if (queue.size() > k) {
+                queue.poll();
+            }
+        }
+        final List<String> result = new ArrayList<>(queue.size());
+        while (!queue.isEmpty()) {
+            result.add(queue.poll().getKey());
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    private static String first(final List<String> top) {
+        return top.isEmpty() ? "" : top.get(0);
+    }
+
+    /**
+     * Returns up to {@code k} groups with most students, largest first, ties by group name.
+     *
+     * @param k number of groups.
+     * @return names of groups.
+     */
+    public List<String> getLargestGroups(final int k) {
+        return top(groupSizes, k, BY_COUNT_THEN_MIN_KEY);
+    }
+
+    /**
+     * Returns up to {@code k} groups with most distinct first names, largest first, ties by group name.
+     *
+     * @param k number of groups.
+     * @return names of groups.
+     */
+    public List<String> getLargestGroupsFirstName(final int k) {
+        return top(sizes(groupFirstNames), k, BY_COUNT_THEN_MIN_KEY);
+    }
+
+    /**
+     * Returns up to {@code k} full names occurring in most groups, most popular first,
+     * ties by greater full name.
+     *
+     * @param k number of names.
+     * @return full names.
+     */
+    public List<String> getMostPopularNames(final int k) {
+        return top(sizes(nameGroups), k, BY_COUNT_THEN_MAX_KEY);
+    }
+
+    /**
+     * Returns the same as {@link StudentDB#getLargestGroup(Collection)}.
+     *
+     * @return name of the largest group or empty string.
+     */
+    public String getLargestGroup() {
+        return first(getLargestGroups(1));
+    }
+
+    /**
+     * Returns the same as {@link StudentDB#getLargestGroupFirstName(Collection)}.
+     *
+     * @return name of the group or empty string.
+     */
+    public String getLargestGroupFirstName() {
+        return first(getLargestGroupsFirstName(1));
+    }
+
+    /**
+     * Returns the same as {@link StudentDB#getMostPopularName(Collection)}.
+     *
+     * @return full name or empty string.
+     */
+    public String getMostPopularName() {
+        return first(getMostPopularNames(1));
+    }
+
+    /**
+     * Returns the same as {@link StudentDB#getMinStudentFirstName(List)}.
+     *
+     * @return first name of the student with minimal id or empty string.
+     */
+    public String getMinStudentFirstName() {
+        return minStudent == null ? "" : minStudent.getFirstName();
+    }
+}
@@ -8,37 +8,61 @@ import java.util.*;
 import java.util.function.BinaryOperator;
 import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collector;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class StudentDB implements AdvancedStudentGroupQuery {
-    private static final Comparator<Student> COMPARATOR_BY_NAME =
+    static final Comparator<Student> COMPARATOR_BY_NAME =
             Comparator.comparing(Student::getLastName)
                     .thenComparing(Student::getFirstName)
                     .thenComparingInt(Student::getId);
 
-    private static final Comparator<Student> COMPARATOR_BY_ID =
+    static final Comparator<Student> COMPARATOR_BY_ID =
             Comparator.comparingInt(Student::getId);
 
     private static final Comparator<Group> COMPARATOR_GROUP_BY_NAME =
             Comparator.comparing(Group::getName);
 
-    private Stream<Map.Entry<String, List<Student>>> getGroupsStreamBy(Stream<Student> students) {
-        return students
-                .collect(Collectors.groupingBy(Student::getGroup))
-                .entrySet()
-                .stream();
+    private final boolean parallel;
+
+    /**
+     * Creates sequential database.
+     */
+    public StudentDB() {
+        this(false);
     }
 
-    private Stream<Map.Entry<String, List<Student>>> getSortGroupsStreamBy(Collection<Student> students,
-                                                                           Comparator<Student> comparator) {
-        return getGroupsStreamBy(students.stream().sorted(comparator));
+    /**
+     * Creates database, which runs queries on parallel streams when {@code parallel} is set.
+     *
+     * @param parallel whether to use parallel streams.
+     */
+    public StudentDB(boolean parallel) {
+        this.parallel = parallel;
+    }
 
+    private Stream<Student> stream(Collection<Student> students) {
+        return parallel ? students.parallelStream() : students.stream();
+    }
+
+    private <K, D> Map<K, D> groupUnorderedBy(Collection<Student> students, Function<Student, K> key,
+                                     Collector<Student, ?, D> downstream) {
+        return parallel
+                ? students.parallelStream().collect(Collectors.groupingByConcurrent(key, downstream))
+                : students.stream().collect(Collectors.groupingBy(key, downstream));
     }
 
     private List<Group> getGroupsBy(Collection<Student> students, Comparator<Student> comparator) {
-        return getSortGroupsStreamBy(students, comparator)
-                .map(entry -> new Group(entry.getKey(), entry.getValue()))
+        return stream(students)
+                .collect(Collectors.groupingBy(Student::getGroup))
+                .entrySet()
+                .stream()
+                .map(entry -> {
+                    entry.getValue().sort(comparator);
+                    return new Group(entry.getKey(), entry.getValue());
+                })
                 .sorted(COMPARATOR_GROUP_BY_NAME)
                 .collect(Collectors.toList());
     }
@@ -53,43 +77,48 @@ public class StudentDB implements AdvancedStudentGroupQuery {
         return getGroupsBy(students, COMPARATOR_BY_ID);
     }
 
-    private class Pair<E, T> {
-        E first;
-        T second;
-
-        Pair(E first, T second) {
-            this.first = first;
-            this.second = second;
-        }
-
-        E getFirst() {
-            return first;
-        }
-
-        T getSecond() {
-            return second;
-        }
-    }
-
-    private String getLargestGroupBy(Collection<Student> students,
-                                     Function<Map.Entry<String, List<Student>>, Pair<String, Integer>> comparator) {
-        return getGroupsStreamBy(students.stream())
-                .map(comparator)
-                .max(Comparator.<Pair<String, Integer>>comparingInt(Pair::getSecond)
-                        .thenComparing(Pair::getFirst, Collections.reverseOrder(String::compareTo)))
-                .map(Pair::getFirst)
+    private <D> String getLargestGroupBy(Collection<Student> students, Collector<Student, ?, D> downstream,
+                                         ToIntFunction<D> size) {
+        return groupUnorderedBy(students, Student::getGroup, downstream)
+                .entrySet()
+                .stream()
+                .max(Comparator.<Map.Entry<String, D>>comparingInt(entry -> size.applyAsInt(entry.getValue()))
+                        .thenComparing(Map.Entry::getKey, Collections.reverseOrder(String::compareTo)))
+                .map(Map.Entry::getKey)
                 .orElse("");
     }
 
     @Override
     public String getLargestGroup(Collection<Student> students) {
-        return getLargestGroupBy(students, entry -> new Pair<>(entry.getKey(), entry.getValue().size()));
+        return getLargestGroupBy(students, Collectors.counting(), Long::intValue);
     }
 
     @Override
     public String getLargestGroupFirstName(Collection<Student> students) {
-        return getLargestGroupBy(students, entry -> new Pair<>(entry.getKey(),
-                getDistinctFirstNames(entry.getValue()).size()));
+        return getLargestGroupBy(students, Collectors.mapping(Student::getFirstName, Collectors.toSet()), Set::size);
+    }
+
+    /**
+     * Returns up to {@code k} groups with most students, in order of {@link #getLargestGroup(Collection)}.
+     *
+     * @param students students to aggregate.
+     * @param k        number of groups.
+     * @return names of groups.
+     */
+    public List<String> getLargestGroups(Collection<Student> students, int k) {
+        return StudentAggregator.of(students.iterator()).getLargestGroups(k);
+    }
+
+    /**
+     * Returns up to {@code k} full names occurring in most groups, in order of
+     * {@link #getMostPopularName(Collection)}.
+     *
+     * @param students students to aggregate.
+     * @param k        number of names.
+     * @return full names.
+     */
+    public List<String> getMostPopularNames(Collection<Student> students, int k) {
+        return StudentAggregator.of(students.iterator()).getMostPopularNames(k);
     }
 
     private List<String> getListBy(List<Student> students, Function<Student, String> comparator) {
@@ -111,13 +140,13 @@ public class StudentDB implements AdvancedStudentGroupQuery {
         return getListBy(students, Student::getGroup);
     }
 
-    private String getFullName(Student student) {
+    static String getFullName(Student student) {
         return student.getFirstName() + " " + student.getLastName();
     }
 
     @Override
     public List<String> getFullNames(List<Student> students) {
-        return getListBy(students, this::getFullName);
+        return getListBy(students, StudentDB::getFullName);
     }
 
     @Override
@@ -136,7 +165,7 @@ public class StudentDB implements AdvancedStudentGroupQuery {
     }
 
     private Stream<Student> filterStudentsStreamBy(Collection<Student> students, Predicate<Student> filter) {
-        return students.stream()
+        return stream(students)
                 .filter(filter);
     }
 
@@ -151,7 +180,7 @@ public class StudentDB implements AdvancedStudentGroupQuery {
     }
 
     private List<Student> sortStudentsBy(Collection<Student> students, Comparator<Student> comparator) {
-        return sortAndCollect(students.stream(), comparator);
+        return sortAndCollect(stream(students), comparator);
     }
 
     @Override
@@ -192,9 +221,8 @@ public class StudentDB implements AdvancedStudentGroupQuery {
 
     @Override
     public String getMostPopularName(Collection<Student> students) {
-        return students.stream()
-                .collect(Collectors.groupingBy(this::getFullName,
-                        Collectors.mapping(Student::getGroup, Collectors.toSet())))
+        return groupUnorderedBy(students, StudentDB::getFullName,
+                Collectors.mapping(Student::getGroup, Collectors.toSet()))
                 .entrySet()
                 .stream()
                 .max(Map.Entry.<String, Set<String>>comparingByValue(Comparator.comparingInt(Set::size))
@@ -203,30 +231,38 @@ public class StudentDB implements AdvancedStudentGroupQuery {
                 .orElse("");
     }
 
+    /**
+     * Returns random-access view of {@code students} for repeated index lookups.
+     *
+     * @param students students in iteration order.
+     * @return view of students.
+     */
+    public StudentView view(Collection<Student> students) {
+        return new StudentView(students);
+    }
+
     private List<String> getByIndices(Collection<Student> students, int[] indices,
-                                      Function<Student, String> comparator) {
-        return Arrays.stream(indices).mapToObj(new ArrayList<>(students)::get)
-                .map(comparator)
-                .collect(Collectors.toList());
+                                      StudentView.Projection projection) {
+        return view(students).get(indices, projection);
     }
 
     @Override
     public List<String> getFirstNames(Collection<Student> students, int[] indices) {
-        return getByIndices(students, indices, Student::getFirstName);
+        return getByIndices(students, indices, StudentView.Projection.FIRST_NAME);
     }
 
     @Override
     public List<String> getLastNames(Collection<Student> students, int[] indices) {
-        return getByIndices(students, indices, Student::getLastName);
+        return getByIndices(students, indices, StudentView.Projection.LAST_NAME);
     }
 
     @Override
     public List<String> getGroups(Collection<Student> students, int[] indices) {
-        return getByIndices(students, indices, Student::getGroup);
+        return getByIndices(students, indices, StudentView.Projection.GROUP);
     }
 
     @Override
     public List<String> getFullNames(Collection<Student> students, int[] indices) {
-        return getByIndices(students, indices, this::getFullName);
+        return getByIndices(students, indices, StudentView.Projection.FULL_NAME);
     }
 }
\ No newline at end of file
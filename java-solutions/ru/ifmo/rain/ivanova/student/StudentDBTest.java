@@ -0,0 +1,162 @@
+package ru.ifmo.rain.ivanova.student;
+
+import info.kgeorgiy.java.advanced.student.AdvancedStudentGroupQuery;
+import info.kgeorgiy.java.advanced.student.Student;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StudentDBTest {
+    private static final int[] SIZES = {0, 1, 2, 5, 50, 1000};
+    private static final String[] FIRST_NAMES = {"Anna", "Boris", "Vera", "Gleb", "Daria"};
+    private static final String[] LAST_NAMES = {"Ivanova", "Petrov", "Sidorova", "Orlov"};
+    private static final String[] GROUPS = {"M3234", "M3235", "M3236", "M3237"};
+    private static final StudentDB reference = new StudentDB();
+    private final Random random = new Random(2981);
+
+    private String pick(final String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private Student student(final int size) {
+        return new Student(random.nextInt(size * 3 + 1), pick(FIRST_NAMES), pick(LAST_NAMES), pick(GROUPS));
+    }
+
+    private List<Student> students(final int size) {
+        final List<Student> students = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            students.add(student(size));
+        }
+        if (size > 1) {
+            students.add(students.get(random.nextInt(size)));
+        }
+        return students;
+    }
+
+    private int[] indices(final int size) {
+        final int[] indices = new int[size == 0 ? 0 : 10];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = random.nextInt(size);
+        }
+        return indices;
+    }
+
+    private void checkQueries(final AdvancedStudentGroupQuery db, final Collection<Student> students) {
+        final List<Student> list = new ArrayList<>(students);
+        assertEquals(reference.getGroupsByName(list), db.getGroupsByName(students));
+        assertEquals(reference.getGroupsById(list), db.getGroupsById(students));
+        assertEquals(reference.getLargestGroup(list), db.getLargestGroup(students));
+        assertEquals(reference.getLargestGroupFirstName(list), db.getLargestGroupFirstName(students));
+        assertEquals(reference.getMostPopularName(list), db.getMostPopularName(students));
+        assertEquals(reference.sortStudentsById(list), db.sortStudentsById(students));
+        assertEquals(reference.sortStudentsByName(list), db.sortStudentsByName(students));
+        for (final String name : List.of(pick(FIRST_NAMES), "Nobody")) {
+            assertEquals(reference.findStudentsByFirstName(list, name), db.findStudentsByFirstName(students, name));
+        }
+        for (final String name : List.of(pick(LAST_NAMES), "Nobody")) {
+            assertEquals(reference.findStudentsByLastName(list, name), db.findStudentsByLastName(students, name));
+        }
+        for (final String group : List.of(pick(GROUPS), "M0000")) {
+            assertEquals(reference.findStudentsByGroup(list, group), db.findStudentsByGroup(students, group));
+            assertEquals(reference.findStudentNamesByGroup(list, group), db.findStudentNamesByGroup(students, group));
+        }
+        final int[] indices = indices(list.size());
+        assertEquals(reference.getFirstNames(list, indices), db.getFirstNames(students, indices));
+        assertEquals(reference.getLastNames(list, indices), db.getLastNames(students, indices));
+        assertEquals(reference.getGroups(list, indices), db.getGroups(students, indices));
+        assertEquals(reference.getFullNames(list, indices), db.getFullNames(students, indices));
+        if (students instanceof List) {
+            final List<Student> same = (List<Student>) students;
+            assertEquals(reference.getFirstNames(list), db.getFirstNames(same));
+            assertEquals(reference.getLastNames(list), db.getLastNames(same));
+            assertEquals(reference.getGroups(list), db.getGroups(same));
+            assertEquals(reference.getFullNames(list), db.getFullNames(same));
+            assertEquals(reference.getDistinctFirstNames(list), db.getDistinctFirstNames(same));
+            assertEquals(reference.getMinStudentFirstName(list), db.getMinStudentFirstName(same));
+        }
+    }
+
+    @Test
+    public void test00_indexed() {
+        for (final int size : SIZES) {
+            final List<Student> students = students(size);
+            final IndexedStudentDB db = new IndexedStudentDB(students);
+            checkQueries(db, db.roster());
+            checkQueries(db, students);
+            checkQueries(db, students(size));
+        }
+    }
+
+    @Test
+    public void test01_indexedChanges() {
+        final List<Student> students = students(200);
+        final IndexedStudentDB db = new IndexedStudentDB(students);
+        final List<Student> expected = new ArrayList<>(students);
+        for (int i = 0; i < 3000; i++) {
+            final int operation = random.nextInt(3);
+            if (operation == 0 || expected.isEmpty()) {
+                final Student student = student(200);
+                db.add(student);
+                expected.add(student);
+            } else if (operation == 1) {
+                assertTrue(db.remove(expected.remove(random.nextInt(expected.size()))));
+            } else {
+                final Student student = expected.remove(random.nextInt(expected.size()));
+                expected.add(db.changeGroup(student, pick(GROUPS)));
+            }
+            assertEquals(expected, new ArrayList<>(db.roster()));
+            if (i % 100 == 0) {
+                checkQueries(db, db.roster());
+            }
+        }
+        while (!expected.isEmpty()) {
+            assertTrue(db.remove(expected.remove(expected.size() - 1)));
+        }
+        checkQueries(db, db.roster());
+    }
+
+    @Test
+    public void test02_columnar() {
+        for (final int size : SIZES) {
+            final List<Student> students = students(size);
+            final ColumnarStudentDB db = new ColumnarStudentDB(students);
+            assertEquals(students, db.roster());
+            checkQueries(db, db.roster());
+            checkQueries(db, students(size));
+        }
+    }
+
+    @Test
+    public void test03_caching() {
+        for (final int size : SIZES) {
+            final List<Student> students = students(size);
+            final CachingStudentDB db = new CachingStudentDB(new StudentDB(), 8);
+            checkQueries(db, students);
+            checkQueries(db, students);
+            checkQueries(db, students(size));
+        }
+    }
+
+    @Test
+    public void test04_cachingChanges() {
+        final IndexedStudentDB indexed = new IndexedStudentDB(students(100));
+        final CachingStudentDB db = new CachingStudentDB(indexed, 100, indexed::version);
+        for (int i = 0; i < 200; i++) {
+            final List<Student> roster = new ArrayList<>(indexed.roster());
+            if (random.nextBoolean() || roster.isEmpty()) {
+                indexed.add(student(100));
+            } else {
+                indexed.changeGroup(roster.get(random.nextInt(roster.size())), pick(GROUPS));
+            }
+            checkQueries(db, indexed.roster());
+            checkQueries(db, indexed.roster());
+        }
+        assertTrue(db.hits() > 0);
+    }
+}
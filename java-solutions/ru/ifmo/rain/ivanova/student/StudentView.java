@@ -0,0 +1,101 @@
+package ru.ifmo.rain.ivanova.student;
+
+import info.kgeorgiy.java.advanced.student.Student;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Random-access view of a student collection for repeated lookups by index.
+ * <p>
+ * The collection is copied into an indexed list once, or used directly if it already is
+ * a random-access {@code List}, so each lookup is {@code O(1)}.
+ * The view does not track later changes of a copied collection.
+ */
+public class StudentView {
+    /**
+     * String projections of a student.
+     */
+    public enum Projection {
+        FIRST_NAME(Student::getFirstName),
+        LAST_NAME(Student::getLastName),
+        GROUP(Student::getGroup),
+        FULL_NAME(StudentDB::getFullName);
+
+        private final Function<Student, String> function;
+
+        Projection(final Function<Student, String> function) {
+            this.function = function;
+        }
+
+        String apply(final Student student) {
+            return function.apply(student);
+        }
+    }
+
+    private final List<Student> students;
+
+    /**
+     * Creates view of {@code students}.
+     *
+     * @param students students in iteration order.
+     */
+    public StudentView(final Collection<Student> students) {
+        this.students = students instanceof List && students instanceof RandomAccess
+                ? (List<Student>) students
+                : new ArrayList<>(students);
+    }
+
+    /**
+     * Returns number of students.
+     *
+     * @return number of students.
+     */
+    public int size() {
+        return students.size();
+    }
+
+    /**
+     * Returns student by index.
+     *
+     * @param index index in iteration order of the collection.
+     * @return student.
+     */
+    public Student get(final int index) {
+        return students.get(index);
+    }
+
+    /**
+     * Returns projection of students with given indices.
+     *
+     * @param indices    indices of students.
+     * @param projection projection to apply.
+     * @return projected values in order of {@code indices}.
+     */
+    public List<String> get(final int[] indices, final Projection projection) {
+        final List<String> result = new ArrayList<>(indices.length);
+        for (final int index : indices) {
+            result.add(projection.apply(students.get(index)));
+        }
+        return result;
+    }
+
+    /**
+     * Returns several projections of students with given indices in one pass over {@code indices}.
+     *
+     * @param indices     indices of students.
+     * @param projections projections to apply.
+     * @return projected values in order of {@code indices} for each requested projection.
+     */
+    public Map<Projection, List<String>> project(final int[] indices, final Projection... projections) {
+        final Map<Projection, List<String>> result = new EnumMap<>(Projection.class);
+        for (final Projection projection : projections) {
+            result.put(projection, new ArrayList<>(indices.length));
+        }
+        for (final int index : indices) {
+            final Student student = students.get(index);
+            result.forEach((projection, values) -> values.add(projection.apply(student)));
+        }
+        return result;
+    }
+}
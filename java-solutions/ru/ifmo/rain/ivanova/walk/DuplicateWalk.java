@@ -0,0 +1,185 @@
+package ru.ifmo.rain.ivanova.walk;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Finds clusters of files with equal contents under the roots listed in the input file.
+ * <p>
+ * Files are grouped by size first, then by FNV hash of the first {@value #PREFIX_SIZE} bytes,
+ * and only files still sharing a group are read fully and compared by SHA-256.
+ * Each cluster is written as a {@code size count} line, followed by its paths and an empty line.
+ */
+public class DuplicateWalk {
+    private static final int PREFIX_SIZE = 4096;
+
+    private final Map<Long, List<Path>> bySize = new TreeMap<>();
+    private final Set<Object> visited = new HashSet<>();
+    private final byte[] buffer = new byte[1 << 16];
+    private final MessageDigest digest;
+
+    DuplicateWalk() throws NoSuchAlgorithmException {
+        digest = MessageDigest.getInstance("SHA-256");
+    }
+
+    private class SizeFileVisitor extends SimpleFileVisitor<Path> {
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            if (attrs.isRegularFile() && visited.add(fileKey(file, attrs))) {
+                bySize.computeIfAbsent(attrs.size(), unused -> new ArrayList<>()).add(file);
+            }
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException exc) {
+            System.err.println("Can't visit file: " + exc.getMessage());
+            return FileVisitResult.CONTINUE;
+        }
+    }
+
+    // Same file reached through overlapping roots or links is counted once.
+    private static Object fileKey(Path file, BasicFileAttributes attrs) {
+        if (attrs.fileKey() != null) {
+            return attrs.fileKey();
+        }
+        try {
+            return file.toRealPath();
+        } catch (IOException e) {
+            return file.toAbsolutePath().normalize();
+        }
+    }
+
+    void walk(Path root) throws IOException {
+        Files.walkFileTree(root, new SizeFileVisitor());
+    }
+
+    private String prefixHash(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return Integer.toHexString(HashFileVisitor.hash(in, buffer, PREFIX_SIZE));
+        }
+    }
+
+    private String fullHash(Path file) throws IOException {
+        digest.reset();
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    private interface PathHasher {
+        String hash(Path file) throws IOException;
+    }
+
+    private Collection<List<Path>> groupBy(List<Path> files, PathHasher hasher) {
+        Map<String, List<Path>> groups = new HashMap<>();
+        for (Path file : files) {
+            try {
+                groups.computeIfAbsent(hasher.hash(file), unused -> new ArrayList<>()).add(file);
+            } catch (IOException e) {
+                System.err.println("Error in reading: " + e.getMessage());
+            }
+        }
+        return groups.values();
+    }
+
+    void writeDuplicates(BufferedWriter writer) throws IOException {
+        for (Map.Entry<Long, List<Path>> entry : bySize.entrySet()) {
+            long size = entry.getKey();
+            if (entry.getValue().size() < 2) {
+                continue;
+            }
+            if (size == 0) {
+                writeCluster(writer, size, entry.getValue());
+                continue;
+            }
+            Collection<List<Path>> candidates = size <= PREFIX_SIZE
+                    ? List.of(entry.getValue())
+                    : groupBy(entry.getValue(), this::prefixHash);
+            for (List<Path> candidate : candidates) {
+                if (candidate.size() < 2) {
+                    continue;
+                }
+                for (List<Path> cluster : groupBy(candidate, this::fullHash)) {
+                    if (cluster.size() > 1) {
+                        writeCluster(writer, size, cluster);
+                    }
+                }
+            }
+        }
+    }
+
+    private void writeCluster(BufferedWriter writer, long size, List<Path> cluster) throws IOException {
+        writer.write(String.format(Locale.ROOT, "%d %d%n", size, cluster.size()));
+        for (Path file : cluster) {
+            writer.write(file.toString());
+            writer.newLine();
+        }
+        writer.newLine();
+    }
+
+    public static void main(String[] args) {
+        if (args == null || args.length != 2 || Arrays.stream(args).anyMatch(Objects::isNull)) {
+            System.err.println("Enter input and output files");
+            return;
+        }
+        try {
+            final DuplicateWalk duplicateWalk = new DuplicateWalk();
+            try (BufferedReader reader = Files.newBufferedReader(Paths.get(args[0]))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    try {
+                        duplicateWalk.walk(Paths.get(line));
+                    } catch (InvalidPathException | IOException e) {
+                        System.err.println("Can't walk " + line + ": " + e.getMessage());
+                    }
+                }
+            } catch (IOException e) {
+                throw new WalkException("Not found input file", e);
+            } catch (InvalidPathException e) {
+                throw new WalkException("Invalid name of input file", e);
+            }
+            try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(args[1]))) {
+                duplicateWalk.writeDuplicates(writer);
+            } catch (IOException e) {
+                throw new WalkException("Error in writing in output file", e);
+            } catch (InvalidPathException e) {
+                throw new WalkException("Invalid name of output file", e);
+            }
+        } catch (NoSuchAlgorithmException e) {
+            System.err.println("SHA-256 is not available: " + e.getMessage());
+        } catch (WalkException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+}
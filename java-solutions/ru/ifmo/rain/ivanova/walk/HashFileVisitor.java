@@ -1,57 +1,85 @@
 package ru.ifmo.rain.ivanova.walk;
 
-import java.io.BufferedWriter;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 
 public class HashFileVisitor extends SimpleFileVisitor<Path> {
-    private BufferedWriter writer;
+    private HashWriter writer;
+    private WalkStats stats;
     byte[] buffer = new byte[1024];
 
-    HashFileVisitor(BufferedWriter writer) {
+    HashFileVisitor(HashWriter writer, WalkStats stats) {
         this.writer = writer;
+        this.stats = stats;
+    }
+
+    @Override
+    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+        stats.enterDirectory();
+        return FileVisitResult.CONTINUE;
+    }
+
+    @Override
+    public FileVisitResult postVisitDirectory(Path dir, IOException exc) {
+        stats.leaveDirectory();
+        if (exc != null) {
+            stats.error();
+            System.err.println("Error in reading directory: " + exc.getMessage());
+        }
+        return FileVisitResult.CONTINUE;
     }
 
     @Override
     public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-        print(hash(file.toString()), file.toString());
+        print(hash(file.toString(), attrs.size()), file.toString());
         return FileVisitResult.CONTINUE;
     }
 
     @Override
     public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+        stats.error();
         print(0, file.toString());
         return FileVisitResult.CONTINUE;
     }
 
-    private int hash(String path) {
+    private int hash(String path, long size) {
         try (FileInputStream fileReader = new FileInputStream(path)) {
-            int hval = 0x811c9dc5;
-            int FNV_32_PRIME = 0x01000193;
             try {
-                int read;
-                while ((read = fileReader.read(buffer)) > 0) {
-                    for (int i = 0; i < read; i++) {
-                        hval *= FNV_32_PRIME;
-                        hval ^= (buffer[i] & 0xff);
-                    }
-                }
-                return hval;
+                int hash = hash(fileReader, buffer, Long.MAX_VALUE);
+                stats.file(size);
+                return hash;
             } catch (IOException e) {
+                stats.error();
                 System.err.println("Error in reading: " + e.getMessage());
                 return 0;
             }
         } catch (IOException e) {
+            stats.error();
             System.err.println("Not found file: " + e.getMessage());
             return 0;
         }
     }
 
+    static int hash(InputStream in, byte[] buffer, long limit) throws IOException {
+        int hval = 0x811c9dc5;
+        int FNV_32_PRIME = 0x01000193;
+        int read;
+        while (limit > 0 && (read = in.read(buffer, 0, (int) Math.min(buffer.length, limit))) > 0) {
+            for (int i = 0; i < read; i++) {
+                hval *= FNV_32_PRIME;
+                hval ^= (buffer[i] & 0xff);
+            }
+            limit -= read;
+        }
+        return hval;
+    }
+
     void print(int hash, String s) throws IOException {
-        writer.write(String.format("%08x %s%n", hash, s));
+        writer.write(hash, s);
     }
 }
\ No newline at end of file
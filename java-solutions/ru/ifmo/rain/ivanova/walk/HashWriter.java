@@ -0,0 +1,176 @@
+package ru.ifmo.rain.ivanova.walk;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Batched writer of {@code hash path} records.
+ * <p>
+ * Records are encoded straight into a reusable byte buffer, which is written to the
+ * underlying stream only when it fills up, so no intermediate strings are created per file.
+ */
+class HashWriter implements Closeable, Flushable {
+    enum Format {
+        TEXT, NDJSON, BINARY
+    }
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] JSON_HASH = "{\"hash\":\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] JSON_PATH = "\",\"path\":\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] JSON_END = "\"}\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final OutputStream out;
+    private final Format format;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int size = 0;
+
+    HashWriter(final OutputStream out, final Format format) {
+        this.out = out;
+        this.format = format;
+    }
+
+    static Format parseFormat(final String name) throws IllegalArgumentException {
+        return Format.valueOf(name.toUpperCase(Locale.ROOT));
+    }
+
+    void write(final int hash, final String path) throws IOException {
+        switch (format) {
+            case TEXT:
+                writeHex(hash);
+                writeByte(' ');
+                writeUtf8(path, false);
+                writeBytes(LINE_SEPARATOR);
+                break;
+            case NDJSON:
+                writeBytes(JSON_HASH);
+                writeHex(hash);
+                writeBytes(JSON_PATH);
+                writeUtf8(path, true);
+                writeBytes(JSON_END);
+                break;
+            case BINARY:
+                writeInt(hash);
+                writeInt(utf8Length(path));
+                writeUtf8(path, false);
+                break;
+        }
+    }
+
+    private void writeHex(final int value) throws IOException {
+        ensure(8);
+        for (int shift = 28; shift >= 0; shift -= 4) {
+            buffer[size++] = HEX[(value >>> shift) & 0xf];
+        }
+    }
+
+    private void writeInt(final int value) throws IOException {
+        ensure(4);
+        buffer[size++] = (byte) (value >>> 24);
+        buffer[size++] = (byte) (value >>> 16);
+        buffer[size++] = (byte) (value >>> 8);
+        buffer[size++] = (byte) value;
+    }
+
+    private static int utf8Length(final String s) {
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length()
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private void writeByte(final int b) throws IOException {
+        ensure(1);
+        buffer[size++] = (byte) b;
+    }
+
+    private void writeBytes(final byte[] bytes) throws IOException {
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+    }
+
+    private void writeUtf8(final String s, final boolean json) throws IOException {
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            if (json && (c == '"' || c == '\\')) {
+                writeByte('\\');
+                writeByte(c);
+            } else if (json && c < 0x20) {
+                ensure(6);
+                buffer[size++] = '\\';
+                buffer[size++] = 'u';
+                buffer[size++] = '0';
+                buffer[size++] = '0';
+                buffer[size++] = HEX[c >>> 4];
+                buffer[size++] = HEX[c & 0xf];
+            } else if (c < 0x80) {
+                writeByte(c);
+            } else if (c < 0x800) {
+                ensure(2);
+                buffer[size++] = (byte) (0xc0 | (c >>> 6));
+                buffer[size++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length()
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                final int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                ensure(4);
+                buffer[size++] = (byte) (0xf0 | (codePoint >>> 18));
+                buffer[size++] = (byte) (0x80 | ((codePoint >>> 12) & 0x3f));
+                buffer[size++] = (byte) (0x80 | ((codePoint >>> 6) & 0x3f));
+                buffer[size++] = (byte) (0x80 | (codePoint & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                writeByte('?');
+            } else {
+                ensure(3);
+                buffer[size++] = (byte) (0xe0 | (c >>> 12));
+                buffer[size++] = (byte) (0x80 | ((c >>> 6) & 0x3f));
+                buffer[size++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+    }
+
+    private void ensure(final int length) throws IOException {
+        if (size + length > buffer.length) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        out.write(buffer, 0, size);
+        size = 0;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            out.close();
+        }
+    }
+}
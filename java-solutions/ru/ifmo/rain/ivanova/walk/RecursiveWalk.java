@@ -1,32 +1,55 @@
 package ru.ifmo.rain.ivanova.walk;
 
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Objects;
 
+/**
+ * Writes FNV hashes of all files under the roots listed in the input file.
+ * <p>
+ * Set {@code -Dwalk.progress=<seconds>} to print progress to stderr periodically
+ * and {@code -Dwalk.stats=<file>} to write final statistics as JSON.
+ */
 public class RecursiveWalk {
 
     public static void main(String[] args) {
-        if (args == null || args.length != 2 || args[0] == null || args[1] == null) {
-            System.err.println("Enter input and output files");
+        if (args == null || args.length < 2 || args.length > 3 || Arrays.stream(args).anyMatch(Objects::isNull)) {
+            System.err.println("Enter input and output files and optional format (text, ndjson or binary)");
             return;
         }
+        final HashWriter.Format format;
         try {
+            format = args.length == 3 ? HashWriter.parseFormat(args[2]) : HashWriter.Format.TEXT;
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown output format: " + args[2]);
+            return;
+        }
+        final String statsFile = System.getProperty("walk.stats");
+        final long progress = Long.getLong("walk.progress", 0);
+        try (WalkStats stats = new WalkStats()) {
+            if (progress > 0) {
+                stats.startReporting(progress);
+            }
             try (BufferedReader reader = Files.newBufferedReader(Paths.get(args[0]))) {
-                try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(args[1]))) {
+                try (HashWriter writer = new HashWriter(Files.newOutputStream(Paths.get(args[1])), format)) {
                     try {
-                        HashFileVisitor hashFileVisitor = new HashFileVisitor(writer);
+                        HashFileVisitor hashFileVisitor = new HashFileVisitor(writer, stats);
                         String line;
                         while ((line = reader.readLine()) != null) {
+                            stats.startRoot(line);
                             try {
                                 Files.walkFileTree(Paths.get(line), hashFileVisitor);
                             } catch (InvalidPathException e) {
+                                stats.error();
                                 hashFileVisitor.print(0, line);
                             } catch (IOException e) {
                                 throw new WalkException("Error in writing in output file", e);
+                            } finally {
+                                stats.finishRoot();
                             }
                         }
                     } catch (IOException e) {
@@ -42,6 +65,16 @@ public class RecursiveWalk {
             } catch (InvalidPathException e) {
                 throw new WalkException("Invalid name of input file", e);
             }
+            if (progress > 0) {
+                System.err.println(stats.report());
+            }
+            if (statsFile != null) {
+                try {
+                    stats.writeJson(Paths.get(statsFile));
+                } catch (IOException | InvalidPathException e) {
+                    throw new WalkException("Can't write stats file", e);
+                }
+            }
         } catch (WalkException e) {
             System.err.println(e.getMessage());
         }
@@ -0,0 +1,141 @@
+package ru.ifmo.rain.ivanova.walk;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of a walk: files, bytes, errors, currently open directories and time spent per root.
+ * <p>
+ * Counters are updated by the walking thread and may be read concurrently by the periodic reporter.
+ */
+class WalkStats implements AutoCloseable {
+    private final AtomicLong files = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicInteger openDirectories = new AtomicInteger();
+    private final long start = System.nanoTime();
+    private final List<RootStats> roots = new ArrayList<>();
+    private ScheduledExecutorService reporter;
+
+    private class RootStats {
+        final String root;
+        final long start = System.nanoTime();
+        final long startFiles = files.get();
+        final long startBytes = bytes.get();
+        final long startErrors = errors.get();
+        long nanos = -1;
+        long rootFiles;
+        long rootBytes;
+        long rootErrors;
+
+        RootStats(String root) {
+            this.root = root;
+        }
+
+        void finish() {
+            nanos = System.nanoTime() - start;
+            rootFiles = files.get() - startFiles;
+            rootBytes = bytes.get() - startBytes;
+            rootErrors = errors.get() - startErrors;
+        }
+    }
+
+    void startReporting(long periodSeconds) {
+        reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "walk-stats");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(() -> System.err.println(report()),
+                periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    synchronized void startRoot(String root) {
+        roots.add(new RootStats(root));
+    }
+
+    synchronized void finishRoot() {
+        roots.get(roots.size() - 1).finish();
+    }
+
+    void file(long size) {
+        files.incrementAndGet();
+        bytes.addAndGet(size);
+    }
+
+    void error() {
+        errors.incrementAndGet();
+    }
+
+    void enterDirectory() {
+        openDirectories.incrementAndGet();
+    }
+
+    void leaveDirectory() {
+        openDirectories.decrementAndGet();
+    }
+
+    private double seconds() {
+        return Math.max(System.nanoTime() - start, 1) / 1e9;
+    }
+
+    synchronized String report() {
+        double seconds = seconds();
+        String root = roots.isEmpty() ? "" : roots.get(roots.size() - 1).root;
+        return String.format("%.1fs: %d files (%.0f files/s), %d bytes (%.0f bytes/s), %d errors, "
+                        + "%d open directories, root %d: %s",
+                seconds, files.get(), files.get() / seconds, bytes.get(), bytes.get() / seconds,
+                errors.get(), openDirectories.get(), roots.size(), root);
+    }
+
+    synchronized void writeJson(Path path) throws IOException {
+        double seconds = seconds();
+        try (BufferedWriter writer = Files.newBufferedWriter(path)) {
+            writer.write(String.format(Locale.ROOT,
+                    "{\"seconds\":%.3f,\"files\":%d,\"bytes\":%d,\"errors\":%d,"
+                            + "\"filesPerSecond\":%.1f,\"bytesPerSecond\":%.1f,\"roots\":[",
+                    seconds, files.get(), bytes.get(), errors.get(),
+                    files.get() / seconds, bytes.get() / seconds));
+            for (int i = 0; i < roots.size(); i++) {
+                RootStats root = roots.get(i);
+                writer.write(String.format(Locale.ROOT,
+                        "%s{\"root\":\"%s\",\"seconds\":%.3f,\"files\":%d,\"bytes\":%d,\"errors\":%d}",
+                        i == 0 ? "" : ",", escape(root.root), root.nanos / 1e9,
+                        root.rootFiles, root.rootBytes, root.rootErrors));
+            }
+            writer.write("]}");
+            writer.newLine();
+        }
+    }
+
+    private static String escape(String s) {
+        StringBuilder sb = new StringBuilder();
+        for (char c : s.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public void close() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+        }
+    }
+}